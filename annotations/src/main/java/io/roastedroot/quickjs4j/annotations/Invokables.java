@@ -9,4 +9,8 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface Invokables {
     String value() default "";
+
+    // classpath resource with the JS library to precompile at build time,
+    // the bytecode is emitted as META-INF/quickjs4j/<module name>.qjsbc
+    String library() default "";
 }
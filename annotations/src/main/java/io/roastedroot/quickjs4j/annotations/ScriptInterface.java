@@ -10,6 +10,9 @@ import java.lang.annotation.Target;
 public @interface ScriptInterface {
     Class<?> context() default Void.class;
 
+    // classpath resource with the JS library to precompile at build time
+    String library() default "";
+
     String[] excluded() default {
         "equals",
         "toString",
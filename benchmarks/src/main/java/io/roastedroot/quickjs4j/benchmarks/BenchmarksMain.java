@@ -0,0 +1,20 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// runs the benchmarks selected on the command line, allocation rates are always reported
+public final class BenchmarksMain {
+    private BenchmarksMain() {}
+
+    public static void main(String[] args) throws Exception {
+        var options =
+                new OptionsBuilder()
+                        .parent(new CommandLineOptions(args))
+                        .addProfiler(GCProfiler.class)
+                        .build();
+        new Runner(options).run();
+    }
+}
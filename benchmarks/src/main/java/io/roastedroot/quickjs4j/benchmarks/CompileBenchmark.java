@@ -0,0 +1,81 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.roastedroot.quickjs4j.core.Engine;
+import io.roastedroot.quickjs4j.core.ScriptCache;
+import io.roastedroot.quickjs4j.core.ScriptKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+    private static final byte[] CODE =
+            ("function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n"
+                            + "var result = [];\n"
+                            + "for (var i = 0; i < 10; i++) { result.push(fib(i)); }\n"
+                            + "console.log(JSON.stringify(result));")
+                    .getBytes(UTF_8);
+
+    private Engine cached;
+    private Engine uncached;
+
+    @Setup
+    public void setup() {
+        cached = Engine.builder().build();
+        cached.free(cached.compileRaw(CODE));
+        uncached = Engine.builder().withCache(new NoCache()).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        cached.close();
+        uncached.close();
+    }
+
+    @Benchmark
+    public int cacheHit() {
+        var codePtr = cached.compileRaw(CODE);
+        cached.free(codePtr);
+        return codePtr;
+    }
+
+    @Benchmark
+    public int cacheMiss() {
+        var codePtr = uncached.compileRaw(CODE);
+        uncached.free(codePtr);
+        return codePtr;
+    }
+
+    private static final class NoCache implements ScriptCache {
+        private static final byte[] NO_HASH = new byte[0];
+
+        @Override
+        public ScriptKey key(byte[] code) {
+            return ScriptKey.of((c) -> NO_HASH, code);
+        }
+
+        @Override
+        public byte[] get(ScriptKey key) {
+            return null;
+        }
+
+        @Override
+        public void set(ScriptKey key, byte[] compiled) {}
+    }
+}
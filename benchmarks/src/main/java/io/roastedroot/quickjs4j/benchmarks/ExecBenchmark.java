@@ -0,0 +1,62 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import io.roastedroot.quickjs4j.core.DirectMemory;
+import io.roastedroot.quickjs4j.core.Engine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecBenchmark {
+    @Param({"heap", "direct"})
+    public String memory;
+
+    private Engine engine;
+    private byte[] bytecode;
+
+    @Setup
+    public void setup() {
+        var builder = Engine.builder();
+        if (memory.equals("direct")) {
+            builder.withMemoryFactory(DirectMemory::new);
+        }
+        engine = builder.build();
+        var codePtr =
+                engine.compile(
+                        "var sum = 0;\n"
+                                + "for (var i = 0; i < 1000; i++) { sum += i; }\n"
+                                + "globalThis.result = sum;");
+        bytecode = engine.readCompiled(codePtr);
+        engine.free(codePtr);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void exec() {
+        var codePtr = engine.writeCompiled(bytecode);
+        try {
+            engine.exec(codePtr);
+        } finally {
+            engine.free(codePtr);
+        }
+    }
+}
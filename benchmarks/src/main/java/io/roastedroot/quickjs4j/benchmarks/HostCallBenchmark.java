@@ -0,0 +1,88 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import io.roastedroot.quickjs4j.core.Builtins;
+import io.roastedroot.quickjs4j.core.Engine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// round trips from JS to Java builtins, each invocation executes CALLS host calls
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostCallBenchmark {
+    private static final int CALLS = 1000;
+
+    private Engine engine;
+    private byte[] scalarCalls;
+    private byte[] stringCalls;
+
+    @Setup
+    public void setup() {
+        var builtins =
+                Builtins.builder("from_java")
+                        .addIntIntToInt("add", (x, y) -> x + y)
+                        .addStringToString("echo", (value) -> value)
+                        .build();
+        engine = Engine.builder().addBuiltins(builtins).build();
+        scalarCalls =
+                compile(
+                        "var sum = 0;\n"
+                                + "for (var i = 0; i < "
+                                + CALLS
+                                + "; i++) { sum = from_java.add(sum, i); }");
+        stringCalls =
+                compile(
+                        "for (var i = 0; i < "
+                                + CALLS
+                                + "; i++) { from_java.echo('hello from js'); }");
+    }
+
+    private byte[] compile(String code) {
+        var codePtr = engine.compile(code);
+        try {
+            return engine.readCompiled(codePtr);
+        } finally {
+            engine.free(codePtr);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    private void exec(byte[] bytecode) {
+        var codePtr = engine.writeCompiled(bytecode);
+        try {
+            engine.exec(codePtr);
+        } finally {
+            engine.free(codePtr);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void scalar() {
+        exec(scalarCalls);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void string() {
+        exec(stringCalls);
+    }
+}
@@ -0,0 +1,79 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import io.roastedroot.quickjs4j.core.Builtins;
+import io.roastedroot.quickjs4j.core.Engine;
+import io.roastedroot.quickjs4j.core.HostFunction;
+import io.roastedroot.quickjs4j.core.HostRef;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Java objects passed to JS and back as HostRefs, each invocation creates, reads and
+// releases REFS references
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HostRefBenchmark {
+    private static final int REFS = 1000;
+
+    private Engine engine;
+    private byte[] bytecode;
+
+    @Setup
+    public void setup() {
+        var value = new Object();
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "create", List.of(), HostRef.class, (args) -> value),
+                                new HostFunction(
+                                        "check",
+                                        List.of(HostRef.class),
+                                        Boolean.class,
+                                        (args) -> args.get(0) == value))
+                        .build();
+        engine = Engine.builder().addBuiltins(builtins).build();
+        var codePtr =
+                engine.compile(
+                        "for (var i = 0; i < "
+                                + REFS
+                                + "; i++) {\n"
+                                + "  var ref = from_java.create();\n"
+                                + "  from_java.check(ref);\n"
+                                + "  quickjs4j_engine.release_host_ref(ref);\n"
+                                + "}");
+        bytecode = engine.readCompiled(codePtr);
+        engine.free(codePtr);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFS)
+    public void createAndRelease() {
+        var codePtr = engine.writeCompiled(bytecode);
+        try {
+            engine.exec(codePtr);
+        } finally {
+            engine.free(codePtr);
+        }
+    }
+}
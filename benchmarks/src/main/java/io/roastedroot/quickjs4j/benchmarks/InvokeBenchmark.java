@@ -0,0 +1,107 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import io.roastedroot.quickjs4j.core.Engine;
+import io.roastedroot.quickjs4j.core.GuestFunction;
+import io.roastedroot.quickjs4j.core.Invokables;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeBenchmark {
+    private static final String LIBRARY =
+            "function add(x, y) { return x + y; }\n"
+                    + "function count(items) { return items.length; }";
+
+    private static final int BATCH_SIZE = 100;
+    private static final List<List<Object>> BATCH_ARGS = batchArgs();
+
+    @Param({"false", "true"})
+    public boolean residentLibraries;
+
+    private Engine engine;
+
+    @Setup
+    public void setup() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(
+                                new GuestFunction(
+                                        "add",
+                                        List.of(Integer.class, Integer.class),
+                                        Integer.class),
+                                new GuestFunction("count", List.of(List.class), Integer.class))
+                        .build();
+        engine =
+                Engine.builder()
+                        .addInvokables(invokables)
+                        .withResidentLibraries(residentLibraries)
+                        .build();
+    }
+
+    private static List<List<Object>> batchArgs() {
+        var args = new ArrayList<List<Object>>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            args.add(List.of(i, 1));
+        }
+        return args;
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public Object smallArgs() {
+        return engine.invokeGuestFunction("from_js", "add", List.of(40, 2), LIBRARY);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object batch() {
+        return engine.invokeGuestFunctionBatch("from_js", "add", BATCH_ARGS, LIBRARY);
+    }
+
+    @Benchmark
+    public Object jsonArgs(JsonArgs jsonArgs) {
+        return engine.invokeGuestFunction("from_js", "count", jsonArgs.args, LIBRARY);
+    }
+
+    @State(Scope.Benchmark)
+    public static class JsonArgs {
+        // number of objects in the JSON argument
+        @Param({"1", "1000"})
+        public int size;
+
+        private List<Object> args;
+
+        @Setup
+        public void setup() {
+            var items = new ArrayList<Map<String, Object>>();
+            for (int i = 0; i < size; i++) {
+                items.add(Map.of("id", i, "name", "item" + i, "tags", List.of("a", "b", "c")));
+            }
+            args = List.of(items);
+        }
+    }
+}
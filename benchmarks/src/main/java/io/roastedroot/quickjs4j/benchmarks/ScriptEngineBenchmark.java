@@ -0,0 +1,52 @@
+package io.roastedroot.quickjs4j.benchmarks;
+
+import io.roastedroot.quickjs4j.scripting.JsScriptEngine;
+import java.util.concurrent.TimeUnit;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptEngineBenchmark {
+    private static final String SCRIPT = "var x = 40; x + y;";
+
+    private JsScriptEngine engine;
+    private CompiledScript compiled;
+
+    @Setup
+    public void setup() throws ScriptException {
+        engine = new JsScriptEngine();
+        engine.put("y", 2);
+        compiled = engine.compile(SCRIPT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public Object eval() throws ScriptException {
+        return engine.eval(SCRIPT);
+    }
+
+    @Benchmark
+    public Object evalCompiled() throws ScriptException {
+        return compiled.eval();
+    }
+}
@@ -0,0 +1,13 @@
+package io.roastedroot.quickjs4j.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+
+// Streams the arguments of a guest function invocation, one JSON value each, into the array
+// sent to the guest, the alternative to a List of arguments serialized one by one.
+// The generator is bound to the ObjectMapper of the Engine, e.g. writeObject can be used for POJOs.
+// Generated by the Invokables processor.
+@FunctionalInterface
+public interface ArgsWriter {
+    void write(JsonGenerator generator) throws IOException;
+}
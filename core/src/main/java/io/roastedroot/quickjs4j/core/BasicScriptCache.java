@@ -1,43 +1,37 @@
 package io.roastedroot.quickjs4j.core;
 
-import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BasicScriptCache implements ScriptCache, AutoCloseable {
-    private static final String DEFAULT_MESSAGE_DIGEST_ALGORITHM = "SHA-256";
-
-    private final HashMap<ByteBuffer, byte[]> cache;
-    private final MessageDigest messageDigest;
+    private final ConcurrentHashMap<ScriptKey, byte[]> cache;
+    private final ScriptHasher hasher;
 
     public BasicScriptCache() {
-        this(DEFAULT_MESSAGE_DIGEST_ALGORITHM);
+        this(ScriptHasher.sha256());
     }
 
     public BasicScriptCache(String messageDigestAlgorithm) {
-        cache = new HashMap<>();
-        try {
-            messageDigest = MessageDigest.getInstance(messageDigestAlgorithm);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
+        this(ScriptHasher.messageDigest(messageDigestAlgorithm));
     }
 
-    private ByteBuffer key(byte[] code) {
-        return ByteBuffer.wrap(messageDigest.digest(code));
+    public BasicScriptCache(ScriptHasher hasher) {
+        this.cache = new ConcurrentHashMap<>();
+        this.hasher = hasher;
     }
 
-    public boolean exists(byte[] code) {
-        return cache.containsKey(key(code));
+    @Override
+    public ScriptKey key(byte[] code) {
+        return ScriptKey.of(hasher, code);
     }
 
-    public void set(byte[] code, byte[] compiled) {
-        cache.put(key(code), compiled);
+    @Override
+    public byte[] get(ScriptKey key) {
+        return cache.get(key);
     }
 
-    public byte[] get(byte[] code) {
-        return cache.get(key(code));
+    @Override
+    public void set(ScriptKey key, byte[] compiled) {
+        cache.put(key, compiled);
     }
 
     public void close() {
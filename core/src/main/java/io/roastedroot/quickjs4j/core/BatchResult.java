@@ -0,0 +1,42 @@
+package io.roastedroot.quickjs4j.core;
+
+// The outcome of a single invocation of Engine.invokeGuestFunctionBatch
+public final class BatchResult {
+    private final Object value;
+    private final String error;
+
+    private BatchResult(Object value, String error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    static BatchResult success(Object value) {
+        return new BatchResult(value, null);
+    }
+
+    static BatchResult failure(String error) {
+        return new BatchResult(null, error);
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    // the value returned by the guest function, throws a GuestException if it failed
+    public Object value() {
+        if (failed()) {
+            throw new GuestException(error);
+        }
+        return value;
+    }
+
+    // the error thrown by the guest function, null if it succeeded
+    public String error() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return failed() ? "BatchResult{error=" + error + "}" : "BatchResult{value=" + value + "}";
+    }
+}
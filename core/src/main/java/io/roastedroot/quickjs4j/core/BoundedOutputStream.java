@@ -0,0 +1,102 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+// Keeps at most maxBytes of output in a fixed size buffer, whatever the guest writes
+public class BoundedOutputStream extends OutputStream {
+    public enum Overflow {
+        // keep the most recent output, like a ring buffer
+        DROP_OLDEST,
+        // keep the first maxBytes and discard what comes after
+        TRUNCATE
+    }
+
+    private final byte[] buffer;
+    private final Overflow overflow;
+    // next write position in the buffer
+    private int position;
+    private int size;
+    private long dropped;
+
+    public BoundedOutputStream(int maxBytes, Overflow overflow) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive, got: " + maxBytes);
+        }
+        this.buffer = new byte[maxBytes];
+        this.overflow = overflow;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (size == buffer.length) {
+            dropped++;
+            if (overflow == Overflow.TRUNCATE) {
+                return;
+            }
+        } else {
+            size++;
+        }
+        buffer[position] = (byte) b;
+        position = (position + 1) % buffer.length;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        if (overflow == Overflow.TRUNCATE) {
+            int count = Math.min(len, buffer.length - size);
+            System.arraycopy(b, off, buffer, size, count);
+            size += count;
+            position = size % buffer.length;
+            dropped += len - count;
+            return;
+        }
+        // only the tail fits in the buffer
+        if (len > buffer.length) {
+            off += len - buffer.length;
+            dropped += len - buffer.length;
+            len = buffer.length;
+        }
+        int overwritten = Math.max(0, size + len - buffer.length);
+        dropped += overwritten;
+        int first = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, first);
+        System.arraycopy(b, off + first, buffer, 0, len - first);
+        position = (position + len) % buffer.length;
+        size = Math.min(buffer.length, size + len);
+    }
+
+    // bytes currently retained
+    public synchronized int size() {
+        return size;
+    }
+
+    // bytes discarded because the buffer was full
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    public synchronized void reset() {
+        position = 0;
+        size = 0;
+        dropped = 0;
+    }
+
+    public synchronized byte[] toByteArray() {
+        var result = new byte[size];
+        int start = (size == buffer.length) ? position : 0;
+        int first = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, result, 0, first);
+        System.arraycopy(buffer, 0, result, first, size - first);
+        return result;
+    }
+
+    public String toString(Charset charset) {
+        return new String(toByteArray(), charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,395 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import run.endive.runtime.Instance;
+import run.endive.runtime.Memory;
+import run.endive.runtime.TrapException;
+import run.endive.wasm.types.ActiveDataSegment;
+import run.endive.wasm.types.DataSegment;
+import run.endive.wasm.types.MemoryLimits;
+import run.endive.wasm.types.OpCode;
+import run.endive.wasm.types.PassiveDataSegment;
+
+// Guest linear memory allocated off-heap, one direct ByteBuffer per page.
+// Growing only allocates the new pages, nothing is copied, and the GC doesn't scan the content,
+// e.g.: Engine.builder().withMemoryFactory(DirectMemory::new)
+// Direct memory is bounded by -XX:MaxDirectMemorySize and released when the Engine is collected.
+public final class DirectMemory implements Memory {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // addresses are ints, the same bound as ByteArrayMemory
+    private static final int MAX_PAGES = 32767;
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+    private final MemoryLimits limits;
+    private DataSegment[] dataSegments;
+    private ByteBuffer[] pages;
+    private int nPages;
+
+    public DirectMemory(MemoryLimits limits) {
+        if (limits.shared()) {
+            throw new IllegalArgumentException("Shared memories are not supported");
+        }
+        this.limits = limits;
+        this.pages = new ByteBuffer[Math.max(limits.initialPages(), 1)];
+        allocate(limits.initialPages());
+    }
+
+    private void allocate(int newPages) {
+        if (newPages > pages.length) {
+            // only the references are copied
+            pages = Arrays.copyOf(pages, Math.min(Math.max(newPages, pages.length * 2), MAX_PAGES));
+        }
+        for (int i = nPages; i < newPages; i++) {
+            // allocateDirect zeroes the memory
+            pages[i] = ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        nPages = newPages;
+    }
+
+    private int sizeInBytes() {
+        return nPages << PAGE_SHIFT;
+    }
+
+    private void checkBounds(int addr, int len) {
+        if (addr < 0 || len < 0 || addr > sizeInBytes() - len) {
+            throw new TrapException(
+                    "out of bounds memory access: attempted to access address: "
+                            + addr
+                            + " but limit is: "
+                            + sizeInBytes()
+                            + " and size: "
+                            + len);
+        }
+    }
+
+    private ByteBuffer page(int addr) {
+        return pages[addr >>> PAGE_SHIFT];
+    }
+
+    // true when an access of len bytes crosses into the next page
+    private static boolean straddles(int addr, int len) {
+        return (addr & PAGE_MASK) > PAGE_SIZE - len;
+    }
+
+    // little endian, byte by byte across the page boundary
+    private long readSlow(int addr, int len) {
+        long result = 0;
+        for (int i = 0; i < len; i++) {
+            result |= (page(addr + i).get((addr + i) & PAGE_MASK) & 0xFFL) << (i * 8);
+        }
+        return result;
+    }
+
+    private void writeSlow(int addr, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            page(addr + i).put((addr + i) & PAGE_MASK, (byte) (value >>> (i * 8)));
+        }
+    }
+
+    @Override
+    public int pages() {
+        return nPages;
+    }
+
+    @Override
+    public int grow(int size) {
+        var prevPages = nPages;
+        var numPages = prevPages + size;
+        if (numPages > maximumPages() || numPages < prevPages) {
+            return -1;
+        }
+        allocate(numPages);
+        return prevPages;
+    }
+
+    @Override
+    public int initialPages() {
+        return limits.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return Math.min(limits.maximumPages(), MAX_PAGES);
+    }
+
+    @Override
+    public boolean shared() {
+        return false;
+    }
+
+    @Override
+    public Object lock(int address) {
+        return new Object();
+    }
+
+    @Override
+    public int waitOn(int address, int expected, long timeout) {
+        throw new TrapException("Attempt to wait on a non-shared memory, not supported.");
+    }
+
+    @Override
+    public int waitOn(int address, long expected, long timeout) {
+        throw new TrapException("Attempt to wait on a non-shared memory, not supported.");
+    }
+
+    @Override
+    public int notify(int address, int maxThreads) {
+        return 0;
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        this.dataSegments = dataSegments;
+        if (dataSegments == null) {
+            return;
+        }
+        for (var segment : dataSegments) {
+            if (segment instanceof ActiveDataSegment) {
+                var active = (ActiveDataSegment) segment;
+                var data = active.data();
+                var offset = offset(instance, active);
+                checkBounds(offset, data.length);
+                write(offset, data, 0, data.length);
+            } else if (!(segment instanceof PassiveDataSegment)) {
+                throw new IllegalArgumentException(
+                        "Data segment should be active or passive: " + segment);
+            }
+        }
+    }
+
+    // offsets are constant expressions, in practice an i32.const or a global.get
+    private static int offset(Instance instance, ActiveDataSegment segment) {
+        var instruction = segment.offsetInstructions().get(0);
+        if (instruction.opcode() == OpCode.I32_CONST) {
+            return (int) instruction.operand(0);
+        } else if (instruction.opcode() == OpCode.GLOBAL_GET) {
+            return (int) instance.global((int) instruction.operand(0)).getValue();
+        }
+        throw new IllegalArgumentException("Unsupported data segment offset: " + instruction);
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        var data = dataSegments[segmentId].data();
+        if (offset < 0 || size < 0 || offset > data.length - size) {
+            throw new TrapException(
+                    "out of bounds memory access: attempted to access data segment offset: "
+                            + offset
+                            + " but limit is: "
+                            + data.length
+                            + " and size: "
+                            + size);
+        }
+        write(dest, data, offset, size);
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        checkBounds(addr, size);
+        while (size > 0) {
+            int count = Math.min(size, PAGE_SIZE - (addr & PAGE_MASK));
+            var buffer = page(addr).duplicate();
+            buffer.position(addr & PAGE_MASK);
+            buffer.put(data, offset, count);
+            addr += count;
+            offset += count;
+            size -= count;
+        }
+    }
+
+    @Override
+    public byte read(int addr) {
+        checkBounds(addr, 1);
+        return page(addr).get(addr & PAGE_MASK);
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        checkBounds(addr, len);
+        var result = new byte[len];
+        int offset = 0;
+        while (offset < len) {
+            int count = Math.min(len - offset, PAGE_SIZE - (addr & PAGE_MASK));
+            var buffer = page(addr).duplicate();
+            buffer.position(addr & PAGE_MASK);
+            buffer.get(result, offset, count);
+            addr += count;
+            offset += count;
+        }
+        return result;
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        checkBounds(addr, 4);
+        if (straddles(addr, 4)) {
+            writeSlow(addr, data, 4);
+        } else {
+            page(addr).putInt(addr & PAGE_MASK, data);
+        }
+    }
+
+    @Override
+    public int readInt(int addr) {
+        checkBounds(addr, 4);
+        if (straddles(addr, 4)) {
+            return (int) readSlow(addr, 4);
+        }
+        return page(addr).getInt(addr & PAGE_MASK);
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        checkBounds(addr, 8);
+        if (straddles(addr, 8)) {
+            writeSlow(addr, data, 8);
+        } else {
+            page(addr).putLong(addr & PAGE_MASK, data);
+        }
+    }
+
+    @Override
+    public long readLong(int addr) {
+        checkBounds(addr, 8);
+        if (straddles(addr, 8)) {
+            return readSlow(addr, 8);
+        }
+        return page(addr).getLong(addr & PAGE_MASK);
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        checkBounds(addr, 2);
+        if (straddles(addr, 2)) {
+            writeSlow(addr, data, 2);
+        } else {
+            page(addr).putShort(addr & PAGE_MASK, data);
+        }
+    }
+
+    @Override
+    public short readShort(int addr) {
+        checkBounds(addr, 2);
+        if (straddles(addr, 2)) {
+            return (short) readSlow(addr, 2);
+        }
+        return page(addr).getShort(addr & PAGE_MASK);
+    }
+
+    @Override
+    public long readU16(int addr) {
+        return readShort(addr) & 0xFFFF;
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        checkBounds(addr, 1);
+        page(addr).put(addr & PAGE_MASK, data);
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        writeI32(addr, Float.floatToRawIntBits(data));
+    }
+
+    @Override
+    public long readF32(int addr) {
+        return readInt(addr);
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        return Float.intBitsToFloat(readInt(addr));
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        writeLong(addr, Double.doubleToRawLongBits(data));
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        return Double.longBitsToDouble(readLong(addr));
+    }
+
+    @Override
+    public long readF64(int addr) {
+        return readLong(addr);
+    }
+
+    @Override
+    public void zero() {
+        fill((byte) 0, 0, sizeInBytes());
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        checkBounds(fromIndex, toIndex - fromIndex);
+        int addr = fromIndex;
+        while (addr < toIndex) {
+            int count = Math.min(toIndex - addr, PAGE_SIZE - (addr & PAGE_MASK));
+            if (value == 0) {
+                var buffer = page(addr).duplicate();
+                buffer.position(addr & PAGE_MASK);
+                buffer.put(ZERO_PAGE, 0, count);
+            } else {
+                var buffer = page(addr);
+                int end = (addr & PAGE_MASK) + count;
+                for (int i = addr & PAGE_MASK; i < end; i++) {
+                    buffer.put(i, value);
+                }
+            }
+            addr += count;
+        }
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        checkBounds(src, size);
+        checkBounds(dest, size);
+        if (dest > src && dest - src < size) {
+            // overlapping ranges, copy backwards so that the source is read before being
+            // overwritten
+            while (size > 0) {
+                int srcEnd = src + size - 1;
+                int destEnd = dest + size - 1;
+                int count =
+                        Math.min(
+                                size,
+                                Math.min((srcEnd & PAGE_MASK) + 1, (destEnd & PAGE_MASK) + 1));
+                size -= count;
+                copyChunk(dest + size, src + size, count);
+            }
+            return;
+        }
+        while (size > 0) {
+            int count =
+                    Math.min(
+                            size,
+                            Math.min(
+                                    PAGE_SIZE - (src & PAGE_MASK), PAGE_SIZE - (dest & PAGE_MASK)));
+            copyChunk(dest, src, count);
+            src += count;
+            dest += count;
+            size -= count;
+        }
+    }
+
+    // within a single page on both sides, overlapping chunks of the same page are copied as memmove
+    private void copyChunk(int dest, int src, int count) {
+        var from = page(src).duplicate();
+        from.position(src & PAGE_MASK);
+        from.limit((src & PAGE_MASK) + count);
+        var to = page(dest).duplicate();
+        to.position(dest & PAGE_MASK);
+        to.put(from);
+    }
+
+    @Override
+    public void drop(int segment) {
+        dataSegments[segment] = PassiveDataSegment.EMPTY;
+    }
+}
@@ -2,16 +2,30 @@ package io.roastedroot.quickjs4j.core;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import run.endive.log.Logger;
 import run.endive.log.SystemLogger;
 import run.endive.runtime.ByteArrayMemory;
@@ -31,8 +45,8 @@ public final class Engine implements AutoCloseable {
     private static final byte[] NULL_BYTES = "null".getBytes(UTF_8);
     public static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper();
 
-    private final ByteArrayOutputStream stdout;
-    private final ByteArrayOutputStream stderr;
+    private final OutputStream stdout;
+    private final OutputStream stderr;
     private final WasiOptions wasiOpts;
 
     private final WasiPreview1 wasi;
@@ -43,19 +57,52 @@ public final class Engine implements AutoCloseable {
     private final Map<String, Invokables> invokables;
     private final ObjectMapper mapper;
 
-    private final List<Object> javaRefs = new ArrayList<>();
+    private final HostRefTable hostRefs;
+    // null when no listener is configured
+    private final EngineMetrics metrics;
+    // set when the Engine is built with fuel metering
+    private MeteredMemory meteredMemory;
+    // set when the Engine is built with fresh invocations
+    private TruncatableMemory truncatableMemory;
+    private final Map<io.roastedroot.quickjs4j.core.HostFunction, HostCallCodec> hostCallCodecs =
+            new IdentityHashMap<>();
 
     private static final String ENGINE_MODULE_NAME = "quickjs4j_engine";
     private static final String MODULE_NAME_FUNC = "module_name";
     private static final String FUNCTION_NAME_FUNC = "function_name";
     private static final String ARGS_FUNC = "args";
+    private static final String RELEASE_HOST_REF_FUNC = "release_host_ref";
+    private static final String RETAIN_HOST_REF_FUNC = "retain_host_ref";
+    private static final String SET_BATCH_RESULT_FUNC = "set_batch_result";
 
     private String invokeModuleName;
     private String invokeFunctionName;
     private String invokeArgs;
+    private Object invokeResult;
+    private GuestFunction batchFunction;
+    private List<BatchResult> batchResults;
+    private byte[] batchDispatcherCode;
 
     private final ScriptCache cache;
 
+    // when enabled, libraries are evaluated once and subsequent invocations only run the
+    // dispatcher against the globals already defined in the guest
+    private final boolean residentLibraries;
+    private final Map<String, ResidentLibrary> loadedLibraries = new HashMap<>();
+    private final Map<String, PortableLibrary> portableLibraries = new HashMap<>();
+    private byte[] dispatcherCode;
+
+    // the state restored by reset, null until there is one
+    private EngineSnapshot baseline;
+    // the scripts loaded in the guest memory, and the ones part of the baseline
+    private final Set<ScriptHandle> scripts = new HashSet<>();
+    private Set<ScriptHandle> baselineScripts = Set.of();
+    // the bytecode each code pointer is reported as in the Exec events, and the ScriptKey of
+    // the bytecode compiled by this Engine, byte arrays are compared by identity
+    private final Map<Integer, byte[]> reportedCode = new HashMap<>();
+    private final Map<byte[], ScriptKey> bytecodeKeys = new WeakHashMap<>();
+    private final boolean freshInvocations;
+
     public static Builder builder() {
         return new Builder();
     }
@@ -66,12 +113,26 @@ public final class Engine implements AutoCloseable {
             ObjectMapper mapper,
             Function<MemoryLimits, Memory> memoryFactory,
             ScriptCache cache,
+            boolean residentLibraries,
+            boolean weakHostRefs,
+            boolean scopedHostRefs,
+            boolean fuelMetering,
+            boolean freshInvocations,
+            EngineMetrics metrics,
+            EngineSnapshot snapshot,
             Logger logger,
-            ByteArrayOutputStream stdout,
-            ByteArrayOutputStream stderr) {
+            OutputStream stdout,
+            OutputStream stderr) {
         this.mapper = mapper;
         this.builtins = builtins;
         this.cache = cache;
+        this.residentLibraries = residentLibraries;
+        this.freshInvocations = freshInvocations;
+        this.metrics = metrics;
+        this.hostRefs =
+                (snapshot == null)
+                        ? new HostRefTable(weakHostRefs, scopedHostRefs)
+                        : snapshot.hostRefs();
         this.stdout = stdout;
         this.stderr = stderr;
 
@@ -82,35 +143,192 @@ public final class Engine implements AutoCloseable {
                         .addVoidToString(MODULE_NAME_FUNC, () -> invokeModuleName)
                         .addVoidToString(FUNCTION_NAME_FUNC, () -> invokeFunctionName)
                         .addVoidToString(ARGS_FUNC, () -> invokeArgs)
+                        .addIntToVoid(RELEASE_HOST_REF_FUNC, hostRefs::release)
+                        .addIntToVoid(RETAIN_HOST_REF_FUNC, hostRefs::retain)
+                        .add(
+                                new io.roastedroot.quickjs4j.core.HostFunction(
+                                        SET_BATCH_RESULT_FUNC,
+                                        List.of(JsonNode.class),
+                                        Void.class,
+                                        (args) -> {
+                                            batchResults = readBatchResults((JsonNode) args.get(0));
+                                            return null;
+                                        }))
                         .build());
 
         var wasiOptsBuilder = WasiOptions.builder().withStdout(stdout).withStderr(stderr);
 
         this.wasiOpts = wasiOptsBuilder.build();
         this.wasi = WasiPreview1.builder().withOptions(this.wasiOpts).withLogger(logger).build();
-        // set_result builtins
+        // set_result builtins, the result is stored per Engine so that the same Invokables
+        // can be shared by multiple engines
         invokables.entrySet().stream()
                 .forEach(
                         e -> {
                             var builder = Builtins.builder(e.getKey());
                             e.getValue()
                                     .functions()
-                                    .forEach(entry -> builder.add(entry.setResultHostFunction()));
+                                    .forEach(entry -> builder.add(setResultHostFunction(entry)));
                             this.builtins.put(e.getKey(), builder.build());
                         });
         this.invokables = invokables;
+        if (freshInvocations) {
+            // the pages grown by an invocation are reused by the next one
+            var baseMemoryFactory = memoryFactory;
+            memoryFactory =
+                    limits -> {
+                        truncatableMemory = new TruncatableMemory(baseMemoryFactory.apply(limits));
+                        return truncatableMemory;
+                    };
+        }
+        if (fuelMetering) {
+            var baseMemoryFactory = memoryFactory;
+            memoryFactory =
+                    limits -> {
+                        meteredMemory = new MeteredMemory(baseMemoryFactory.apply(limits));
+                        return meteredMemory;
+                    };
+        }
+        if (snapshot != null) {
+            // allocate the memory of the snapshot upfront to avoid growing it on restore
+            var baseMemoryFactory = memoryFactory;
+            memoryFactory =
+                    limits ->
+                            baseMemoryFactory.apply(
+                                    new MemoryLimits(
+                                            Math.max(limits.initialPages(), snapshot.pages()),
+                                            limits.maximumPages()));
+        }
         instance =
                 Instance.builder(JavyPluginModule.load())
                         .withMemoryFactory(memoryFactory)
                         .withMachineFactory(JavyPluginModule::create)
                         .withImportValues(
                                 ImportValues.builder()
-                                        .addFunction(wasi.toHostFunctions())
-                                        .addFunction(invokeFn)
+                                        .addFunction(
+                                                unmetered(fuelMetering, wasi.toHostFunctions()))
+                                        .addFunction(unmetered(fuelMetering, invokeFn))
                                         .build())
                         .build();
         exports = new Engine_ModuleExports(instance);
-        exports.initializeRuntime();
+        if (snapshot == null) {
+            exports.initializeRuntime();
+            installBuiltins();
+        } else {
+            // the instantiation applied the data segments, overwrite them with the snapshot
+            snapshot.restore(instance);
+            loadedLibraries.putAll(snapshot.loadedLibraries());
+            dispatcherCode = snapshot.dispatcherCode();
+        }
+        baseline = snapshot;
+        // with fuel metering there is always a state to reset to after running out of fuel
+        if ((freshInvocations || fuelMetering) && baseline == null) {
+            baseline = snapshot();
+        }
+    }
+
+    // the host functions don't consume the fuel of the guest
+    private HostFunction[] unmetered(boolean fuelMetering, HostFunction... functions) {
+        if (!fuelMetering) {
+            return functions;
+        }
+        var result = new HostFunction[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            var function = functions[i];
+            result[i] =
+                    new HostFunction(
+                            function.module(),
+                            function.name(),
+                            function.functionType(),
+                            (inst, args) -> {
+                                var guest = meteredMemory.guest(false);
+                                try {
+                                    return function.handle().apply(inst, args);
+                                } finally {
+                                    meteredMemory.guest(guest);
+                                }
+                            });
+        }
+        return result;
+    }
+
+    // returns the previous state, only the guest code is metered
+    private boolean enterGuest() {
+        return meteredMemory != null && meteredMemory.guest(true);
+    }
+
+    private void exitGuest(boolean guest) {
+        if (meteredMemory != null) {
+            meteredMemory.guest(guest);
+        }
+    }
+
+    // captures the current state of the guest, to be used with Builder.withSnapshot
+    public EngineSnapshot snapshot() {
+        return EngineSnapshot.capture(instance, loadedLibraries, dispatcherCode, hostRefs);
+    }
+
+    // the current state becomes the one restored by reset, e.g. after loading the libraries
+    public void checkpoint() {
+        baseline = snapshot();
+        baselineScripts = Set.copyOf(scripts);
+    }
+
+    // restores the guest memory and globals to the last checkpoint, or to the snapshot the
+    // Engine has been built from, discarding everything the guest did in the meantime.
+    // The memory doesn't shrink, the pages grown since are zeroed, and reused by the next
+    // invocations in fresh mode.
+    public void reset() {
+        if (baseline == null) {
+            throw new IllegalStateException(
+                    "Nothing to reset to, build the Engine withSnapshot or"
+                            + " withFreshInvocations(true), or call checkpoint()");
+        }
+        baseline.restore(instance);
+        if (truncatableMemory != null) {
+            truncatableMemory.truncate(baseline.pages());
+        }
+        loadedLibraries.clear();
+        loadedLibraries.putAll(baseline.loadedLibraries());
+        dispatcherCode = baseline.dispatcherCode();
+        hostRefs.restore(baseline.hostRefs());
+        // the bytecode loaded since is gone
+        reportedCode.clear();
+        for (var script : baselineScripts) {
+            reportedCode.put(script.codePtr(), script.compiledCode());
+        }
+        scripts.removeIf(
+                (script) -> {
+                    if (baselineScripts.contains(script)) {
+                        return false;
+                    }
+                    script.invalidate();
+                    return true;
+                });
+    }
+
+    // in fresh mode every invocation starts from, and leaves, the baseline state
+    private <T> T fresh(Supplier<T> invocation) {
+        if (!freshInvocations) {
+            return invocation.get();
+        }
+        try {
+            return invocation.get();
+        } finally {
+            reset();
+        }
+    }
+
+    private io.roastedroot.quickjs4j.core.HostFunction setResultHostFunction(
+            GuestFunction guestFunction) {
+        return new io.roastedroot.quickjs4j.core.HostFunction(
+                guestFunction.setResultFunName(),
+                List.of(guestFunction.genericReturnType()),
+                Void.class,
+                (args) -> {
+                    invokeResult = args.get(0);
+                    return null;
+                });
     }
 
     private String readJavyString(int ptr, int len) {
@@ -120,11 +338,51 @@ public final class Engine implements AutoCloseable {
 
     public Object invokeGuestFunction(
             String moduleName, String name, List<Object> args, String libraryCode) {
-        return invokeGuestFunction(moduleName, name, args, libraryCode.getBytes(UTF_8));
+        return invokeGuestFunction(moduleName, name, listArgs(moduleName, name, args), libraryCode);
     }
 
     public Object invokeGuestFunction(
             String moduleName, String name, List<Object> args, byte[] libraryCode) {
+        return invokeGuestFunction(moduleName, name, listArgs(moduleName, name, args), libraryCode);
+    }
+
+    public Object invokeGuestFunction(
+            String moduleName, String name, ArgsWriter args, String libraryCode) {
+        if (residentLibraries) {
+            return fresh(
+                    () -> {
+                        // the generated Invokables pass the same String, no need to encode it
+                        var loaded = loadedLibraries.get(moduleName);
+                        if (loaded != null && loaded.matchesSource(libraryCode)) {
+                            return invokeResidentGuestFunction(moduleName, name, args);
+                        }
+                        var compiledCode = compilePortableLibrary(moduleName, libraryCode);
+                        return loadAndInvokeGuestFunction(
+                                moduleName,
+                                new ResidentLibrary(null, libraryCode, compiledCode),
+                                () -> execGuestFunction(moduleName, name, args, compiledCode));
+                    });
+        }
+        return invokePrecompiledGuestFunction(
+                moduleName, name, args, compilePortableLibrary(moduleName, libraryCode));
+    }
+
+    public Object invokeGuestFunction(
+            String moduleName, String name, ArgsWriter args, byte[] libraryCode) {
+        if (residentLibraries) {
+            return fresh(
+                    () -> {
+                        var loaded = loadedLibraries.get(moduleName);
+                        if (loaded != null && loaded.matchesSource(libraryCode)) {
+                            return invokeResidentGuestFunction(moduleName, name, args);
+                        }
+                        var compiledCode = compilePortableGuestFunction(libraryCode);
+                        return loadAndInvokeGuestFunction(
+                                moduleName,
+                                new ResidentLibrary(libraryCode, null, compiledCode),
+                                () -> execGuestFunction(moduleName, name, args, compiledCode));
+                    });
+        }
         return invokePrecompiledGuestFunction(
                 moduleName, name, args, compilePortableGuestFunction(libraryCode));
     }
@@ -147,6 +405,24 @@ public final class Engine implements AutoCloseable {
                 + " }, (err) => { throw err; })";
     }
 
+    // invokes the function once per tuple of arguments and reports all the outcomes at once
+    private String invokeBatchFunction() {
+        return "(async () => {\n"
+                + "  const fn = globalThis[quickjs4j_engine.module_name()]"
+                + "[quickjs4j_engine.function_name()];\n"
+                + "  const results = [];\n"
+                + "  for (const args of JSON.parse(quickjs4j_engine.args())) {\n"
+                + "    try {\n"
+                + "      const value = await fn(...args);\n"
+                + "      results.push({ value: (value === undefined) ? null : value });\n"
+                + "    } catch (err) {\n"
+                + "      results.push({ error: String(err) });\n"
+                + "    }\n"
+                + "  }\n"
+                + "  quickjs4j_engine.set_batch_result(results);\n"
+                + "})()";
+    }
+
     // Plan:
     // we compile a static version of the module and we invoke it parametrically using a basic
     // protocol
@@ -155,29 +431,42 @@ public final class Engine implements AutoCloseable {
         return compilePortableGuestFunction(new String(libraryCode, UTF_8));
     }
 
+    // also used to precompile libraries at build time, the bytecode doesn't depend on the
+    // Builtins and runs on any Engine with the same Invokables
     public byte[] compilePortableGuestFunction(String libraryCode) {
-        int codePtr = 0;
-        try {
-            var buf = new StringBuilder();
-            buf.append(jsPrelude());
-            buf.append('\n');
-            buf.append(libraryCode);
-            buf.append('\n');
-            buf.append(jsSuffix());
-            buf.append('\n');
-            buf.append(invokeFunction());
-            buf.append(";\n");
-
-            codePtr = compileRaw(buf.toString().getBytes(UTF_8));
-            return readCompiled(codePtr);
-        } finally {
-            if (codePtr != 0) {
-                free(codePtr);
-            }
+        return compileGuestFunction(libraryCode, invokeFunction());
+    }
+
+    // the generated Invokables pass the same String on every invocation, the portable code and
+    // its key are computed once per module
+    private byte[] compilePortableLibrary(String moduleName, String libraryCode) {
+        var portable = portableLibraries.get(moduleName);
+        if (portable == null || portable.source != libraryCode) {
+            var code = portableCode(libraryCode, invokeFunction());
+            portable = new PortableLibrary(libraryCode, code, cache.key(code));
+            portableLibraries.put(moduleName, portable);
         }
+        return compileToBytecode(portable.key, portable.code);
     }
 
-    private String computeArgs(String moduleName, String name, List<Object> args) {
+    private byte[] compileGuestFunction(String libraryCode, String dispatcher) {
+        var code = portableCode(libraryCode, dispatcher);
+        return compileToBytecode(cache.key(code), code);
+    }
+
+    private byte[] portableCode(String libraryCode, String dispatcher) {
+        var buf = new StringBuilder();
+        buf.append(libraryCode);
+        buf.append('\n');
+        buf.append(jsSuffix());
+        buf.append('\n');
+        buf.append(dispatcher);
+        buf.append(";\n");
+        return buf.toString().getBytes(UTF_8);
+    }
+
+    // the List is validated right away and serialized later, while the HostRefs scope is open
+    private ArgsWriter listArgs(String moduleName, String name, List<Object> args) {
         GuestFunction guestFunction = invokables.get(moduleName).byName(name);
         if (guestFunction.paramTypes().size() != args.size()) {
             throw new IllegalArgumentException(
@@ -186,104 +475,289 @@ public final class Engine implements AutoCloseable {
                             + " params, but got: "
                             + args.size());
         }
-        StringBuilder paramsStr = new StringBuilder();
-        try {
+        return (generator) -> {
             for (int i = 0; i < args.size(); i++) {
-                if (i > 0) {
-                    paramsStr.append(", ");
-                }
-                var clazz = guestFunction.paramTypes().get(i);
-                if (clazz == HostRef.class) {
-                    javaRefs.add(args.get(i));
-                    var ptr = javaRefs.size() - 1;
-                    paramsStr.append(mapper.writeValueAsString(ptr));
+                if (guestFunction.paramTypes().get(i) == HostRef.class) {
+                    generator.writeNumber(hostRefs.add(args.get(i)));
                 } else {
-                    paramsStr.append(mapper.writeValueAsString(args.get(i)));
+                    generator.writeObject(args.get(i));
                 }
             }
-        } catch (JsonProcessingException e) {
+        };
+    }
+
+    // all the arguments are streamed into a single buffer
+    private String writeArgs(ArgsWriter args) {
+        var out = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            args.write(generator);
+            generator.writeEndArray();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-
-        return "[" + paramsStr + "]";
+        return out.toString();
     }
 
     public Object invokePrecompiledGuestFunction(
             String moduleName, String name, List<Object> args, byte[] compiledCode) {
+        return invokePrecompiledGuestFunction(
+                moduleName, name, listArgs(moduleName, name, args), compiledCode);
+    }
+
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, ArgsWriter args, byte[] compiledCode) {
+        return fresh(
+                () -> {
+                    if (residentLibraries) {
+                        var loaded = loadedLibraries.get(moduleName);
+                        if (loaded != null && loaded.matchesCompiled(compiledCode)) {
+                            return invokeResidentGuestFunction(moduleName, name, args);
+                        }
+                        return loadAndInvokeGuestFunction(
+                                moduleName,
+                                new ResidentLibrary(null, null, compiledCode),
+                                () -> execGuestFunction(moduleName, name, args, compiledCode));
+                    }
+                    return execGuestFunction(moduleName, name, args, compiledCode);
+                });
+    }
+
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, List<Object> args, ScriptHandle library) {
+        return invokePrecompiledGuestFunction(
+                moduleName, name, listArgs(moduleName, name, args), library);
+    }
+
+    // the library bytecode is already in the guest memory, nothing is copied
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, ArgsWriter args, ScriptHandle library) {
+        var codePtr = codePtr(library);
+        return fresh(
+                () -> {
+                    if (residentLibraries) {
+                        var loaded = loadedLibraries.get(moduleName);
+                        if (loaded != null && loaded.matchesCompiled(library.compiledCode())) {
+                            return invokeResidentGuestFunction(moduleName, name, args);
+                        }
+                        return loadAndInvokeGuestFunction(
+                                moduleName,
+                                new ResidentLibrary(null, null, library.compiledCode()),
+                                () -> execGuestFunction(moduleName, name, args, codePtr));
+                    }
+                    return execGuestFunction(moduleName, name, args, codePtr);
+                });
+    }
+
+    // invokes the function with each tuple of arguments in a single execution, the library is
+    // evaluated and the arguments are serialized only once for the whole batch
+    public List<BatchResult> invokeGuestFunctionBatch(
+            String moduleName, String name, List<List<Object>> args, String libraryCode) {
+        return fresh(() -> batch(moduleName, name, args, libraryCode));
+    }
+
+    private List<BatchResult> batch(
+            String moduleName, String name, List<List<Object>> args, String libraryCode) {
+        if (residentLibraries) {
+            var loaded = loadedLibraries.get(moduleName);
+            if (loaded != null && loaded.matchesSource(libraryCode)) {
+                if (batchDispatcherCode == null) {
+                    int codePtr = compileRaw((invokeBatchFunction() + ";\n").getBytes(UTF_8));
+                    try {
+                        batchDispatcherCode = readCompiled(codePtr);
+                    } finally {
+                        free(codePtr);
+                    }
+                }
+                return execGuestFunctionBatch(
+                        moduleName, name, args, batchDispatcherCode, loaded.compiled);
+            }
+        }
+        var compiledCode = compileGuestFunction(libraryCode, invokeBatchFunction());
+        if (residentLibraries) {
+            loadedLibraries.remove(moduleName);
+            var results =
+                    execGuestFunctionBatch(moduleName, name, args, compiledCode, compiledCode);
+            loadedLibraries.put(moduleName, new ResidentLibrary(null, libraryCode, compiledCode));
+            return results;
+        }
+        return execGuestFunctionBatch(moduleName, name, args, compiledCode, compiledCode);
+    }
+
+    // the dispatcher of a resident library is reported as the library
+    private List<BatchResult> execGuestFunctionBatch(
+            String moduleName,
+            String name,
+            List<List<Object>> args,
+            byte[] compiledCode,
+            byte[] reported) {
         int codePtr = 0;
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        hostRefs.enterScope();
         try {
+            var batchArgs = new ArrayList<ArgsWriter>(args.size());
+            for (var tuple : args) {
+                batchArgs.add(listArgs(moduleName, name, tuple));
+            }
             this.invokeModuleName = moduleName;
             this.invokeFunctionName = name;
-            this.invokeArgs = computeArgs(moduleName, name, args);
+            this.invokeArgs =
+                    writeArgs(
+                            (generator) -> {
+                                for (var tuple : batchArgs) {
+                                    generator.writeStartArray();
+                                    tuple.write(generator);
+                                    generator.writeEndArray();
+                                }
+                            });
+            this.batchFunction = invokables.get(moduleName).byName(name);
+            this.batchResults = null;
             codePtr = writeCompiled(compiledCode);
+            reportedCode.put(codePtr, reported);
             exec(codePtr);
         } finally {
+            hostRefs.exitScope();
+            batchFunction = null;
             if (codePtr != 0) {
                 free(codePtr);
             }
+            if (metrics != null) {
+                metrics.guestCall(moduleName, name, System.nanoTime() - start);
+            }
+        }
+        if (batchResults == null) {
+            throw new GuestException("The batch invocation of " + name + " didn't complete");
+        }
+        var results = batchResults;
+        batchResults = null;
+        return results;
+    }
+
+    // converted while the HostRefs created by the batch are still alive
+    private List<BatchResult> readBatchResults(JsonNode items) {
+        Class<?> returnType = batchFunction.returnType();
+        var reader = mapper.readerFor(javaType(batchFunction.genericReturnType()));
+        var results = new ArrayList<BatchResult>(items.size());
+        try {
+            for (var item : items) {
+                var error = item.get("error");
+                if (error != null) {
+                    results.add(BatchResult.failure(error.asText()));
+                    continue;
+                }
+                var value = item.get("value");
+                if (returnType == Void.class || value == null || value.isNull()) {
+                    results.add(BatchResult.success(null));
+                } else if (returnType == HostRef.class) {
+                    results.add(BatchResult.success(hostRefs.get(value.asInt())));
+                } else {
+                    results.add(BatchResult.success(reader.readValue(value)));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
+    // the portable bytecode defines the library globals and then dispatches the invocation,
+    // the library is considered resident only once its evaluation completed successfully
+    private Object loadAndInvokeGuestFunction(
+            String moduleName, ResidentLibrary library, Supplier<Object> invocation) {
+        loadedLibraries.remove(moduleName);
+        var result = invocation.get();
+        loadedLibraries.put(moduleName, library);
+        return result;
+    }
+
+    // reported in the Exec events as the library, not as the dispatcher
+    private Object invokeResidentGuestFunction(String moduleName, String name, ArgsWriter args) {
+        if (dispatcherCode == null) {
+            int codePtr = compileRaw((invokeFunction() + ";\n").getBytes(UTF_8));
+            try {
+                dispatcherCode = readCompiled(codePtr);
+            } finally {
+                free(codePtr);
+            }
+        }
+        int codePtr = writeCompiled(dispatcherCode);
+        reportedCode.put(codePtr, loadedLibraries.get(moduleName).compiled);
+        try {
+            return execGuestFunction(moduleName, name, args, codePtr);
+        } finally {
+            free(codePtr);
+        }
+    }
+
+    private Object execGuestFunction(
+            String moduleName, String name, ArgsWriter args, byte[] compiledCode) {
+        int codePtr = writeCompiled(compiledCode);
+        try {
+            return execGuestFunction(moduleName, name, args, codePtr);
+        } finally {
+            free(codePtr);
+        }
+    }
+
+    private Object execGuestFunction(String moduleName, String name, ArgsWriter args, int codePtr) {
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        hostRefs.enterScope();
+        try {
+            this.invokeModuleName = moduleName;
+            this.invokeFunctionName = name;
+            this.invokeArgs = writeArgs(args);
+            this.invokeResult = null;
+            exec(codePtr);
+        } finally {
+            hostRefs.exitScope();
+            if (metrics != null) {
+                metrics.guestCall(moduleName, name, System.nanoTime() - start);
+            }
         }
 
-        return invokables.get(moduleName).byName(name).getResult();
+        return invokeResult;
     }
 
     private long[] invokeBuiltin(Instance instance, long[] args) {
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        var event = new JfrEvents.HostCall();
+        event.begin();
         String moduleName = readJavyString((int) args[0], (int) args[1]);
         String funcName = readJavyString((int) args[2], (int) args[3]);
-        String argsString = readJavyString((int) args[4], (int) args[5]);
 
-        if (!builtins.containsKey(moduleName)) {
+        var module = builtins.get(moduleName);
+        if (module == null) {
             throw new IllegalArgumentException("Failed to find builtin module name " + moduleName);
         }
-        if (builtins.get(moduleName).byName(funcName) == null) {
+        var receiver = module.byName(funcName);
+        if (receiver == null) {
             throw new IllegalArgumentException(
                     "Failed to find function with name " + funcName + " in module " + moduleName);
         }
-        var receiver = builtins.get(moduleName).byName(funcName);
+        var codec = hostCallCodecs.computeIfAbsent(receiver, this::hostCallCodec);
 
-        var argsList = new ArrayList<>();
         try {
-            JsonNode tree = mapper.readTree(argsString);
-
-            for (int i = 0; i < receiver.paramTypes().size(); i++) {
-                var clazz = receiver.paramTypes().get(i);
-                JsonNode value = null;
-                if (tree.size() > i) {
-                    value = tree.get(i);
-                }
-
-                if (clazz == HostRef.class) {
-                    if (value.isArray()) {
-                        var refs = new ArrayList<>();
-                        for (JsonNode elem : value) {
-                            refs.add(javaRefs.get(elem.intValue()));
-                        }
-                        argsList.add(refs);
-                    } else {
-                        argsList.add(javaRefs.get(value.intValue()));
-                    }
-                } else {
-                    argsList.add(mapper.treeToValue(value, clazz));
-                }
+            // the arguments are parsed straight from the guest memory bytes
+            var argsBytes = instance.memory().readBytes((int) args[4], (int) args[5]);
+            if (metrics != null) {
+                metrics.bytesFromGuest(argsBytes.length);
             }
+            event.argsSize = argsBytes.length;
+            var argsList = readHostCallArgs(receiver, codec, argsBytes);
 
             var res = receiver.invoke(argsList);
 
             // Converting Java references into pointers for JS
-            var returnType = receiver.returnType();
-            if (returnType == HostRef.class) {
-                returnType = Integer.class;
+            var writer = codec.returnWriter;
+            if (receiver.returnType() == HostRef.class) {
                 if (res instanceof HostRef) {
                     res = ((HostRef) res).pointer();
                 } else {
-                    javaRefs.add(res);
-                    res = javaRefs.size() - 1;
+                    res = hostRefs.add(res);
                 }
             }
 
-            var returnBytes =
-                    (returnType == Void.class)
-                            ? NULL_BYTES
-                            : mapper.writerFor(returnType).writeValueAsBytes(res);
+            var returnBytes = (writer == null) ? NULL_BYTES : writer.writeValueAsBytes(res);
 
             var returnPtr =
                     exports.cabiRealloc(
@@ -293,6 +767,10 @@ public final class Engine implements AutoCloseable {
                             returnBytes.length // new size
                             );
             exports.memory().write(returnPtr, returnBytes);
+            if (metrics != null) {
+                metrics.bytesToGuest(returnBytes.length);
+            }
+            event.resultSize = returnBytes.length;
 
             var LEN = 8;
             var widePtr =
@@ -307,8 +785,87 @@ public final class Engine implements AutoCloseable {
             instance.memory().writeI32(widePtr + 4, returnBytes.length);
 
             return new long[] {widePtr};
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (metrics != null) {
+                metrics.hostCall(moduleName, funcName, System.nanoTime() - start);
+            }
+            if (event.shouldCommit()) {
+                event.moduleName = moduleName;
+                event.functionName = funcName;
+                event.commit();
+            }
+        }
+    }
+
+    // streaming parse of the JSON array of arguments, no intermediate tree is built
+    private List<Object> readHostCallArgs(
+            io.roastedroot.quickjs4j.core.HostFunction receiver, HostCallCodec codec, byte[] json)
+            throws IOException {
+        var paramTypes = receiver.paramTypes();
+        var argsList = new ArrayList<>(paramTypes.size());
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException(
+                        "Expected an array of arguments, got: " + new String(json, UTF_8));
+            }
+            var token = parser.nextToken();
+            for (int i = 0; i < paramTypes.size(); i++) {
+                if (token == JsonToken.END_ARRAY || token == null) {
+                    // missing arguments are passed as null
+                    argsList.add(null);
+                    continue;
+                }
+                if (paramTypes.get(i) == HostRef.class) {
+                    if (token == JsonToken.START_ARRAY) {
+                        var refs = new ArrayList<>();
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            refs.add(hostRefs.get(parser.getIntValue()));
+                        }
+                        argsList.add(refs);
+                    } else {
+                        argsList.add(hostRefs.get(parser.getIntValue()));
+                    }
+                } else {
+                    argsList.add(codec.paramReaders[i].readValue(parser));
+                }
+                token = parser.nextToken();
+            }
+        }
+        return argsList;
+    }
+
+    private HostCallCodec hostCallCodec(io.roastedroot.quickjs4j.core.HostFunction receiver) {
+        var paramTypes = receiver.paramTypes();
+        var paramReaders = new ObjectReader[paramTypes.size()];
+        for (int i = 0; i < paramReaders.length; i++) {
+            if (paramTypes.get(i) != HostRef.class) {
+                paramReaders[i] = mapper.readerFor(javaType(receiver.genericParamTypes().get(i)));
+            }
+        }
+        var returnType = receiver.returnType();
+        ObjectWriter returnWriter = null;
+        if (returnType == HostRef.class) {
+            returnWriter = mapper.writerFor(Integer.class);
+        } else if (returnType != Void.class) {
+            returnWriter = mapper.writerFor(javaType(receiver.genericReturnType()));
+        }
+        return new HostCallCodec(paramReaders, returnWriter);
+    }
+
+    private JavaType javaType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+
+    // readers and writers resolved once per HostFunction instead of on every call
+    private static final class HostCallCodec {
+        private final ObjectReader[] paramReaders;
+        private final ObjectWriter returnWriter;
+
+        private HostCallCodec(ObjectReader[] paramReaders, ObjectWriter returnWriter) {
+            this.paramReaders = paramReaders;
+            this.returnWriter = returnWriter;
         }
     }
 
@@ -326,6 +883,19 @@ public final class Engine implements AutoCloseable {
                     List.of(ValueType.I32),
                     this::invokeBuiltin);
 
+    // defines the global functions of the Builtins once, right after the runtime initialization,
+    // scripts are compiled without any prelude.
+    // The prelude is compiled and executed as any other script, the Engines with the same
+    // Builtins share its bytecode through the cache.
+    private void installBuiltins() {
+        int codePtr = compileRaw(jsPrelude().getBytes(UTF_8));
+        try {
+            exec(codePtr);
+        } finally {
+            free(codePtr);
+        }
+    }
+
     // This function dynamically generates the global functions defined by the Builtins
     private String jsPrelude() {
         var preludeBuilder = new StringBuilder();
@@ -371,22 +941,80 @@ public final class Engine implements AutoCloseable {
         return compile(js.getBytes(UTF_8));
     }
 
+    // the Builtins are already installed in the guest, nothing is prepended
     public int compile(byte[] js) {
-        byte[] prelude = jsPrelude().getBytes(UTF_8);
-        byte[] jsCode = new byte[prelude.length + js.length];
-        System.arraycopy(prelude, 0, jsCode, 0, prelude.length);
-        System.arraycopy(js, 0, jsCode, prelude.length, js.length);
-
-        return compileRaw(jsCode);
+        return compileRaw(js);
     }
 
     public int compileRaw(byte[] js) {
-        if (cache.exists(js)) {
-            return writeCompiled(cache.get(js));
+        return compileRaw(cache.key(js), js);
+    }
+
+    // the key computed once with scriptKey, e.g. for code compiled over and over
+    public int compileRaw(ScriptKey key, byte[] js) {
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        var event = new JfrEvents.Compile();
+        event.begin();
+        // a single lookup, the source is compiled only on a miss
+        var compiledPtr = new int[1];
+        byte[] bytecode;
+        try {
+            bytecode =
+                    cache.computeIfAbsent(
+                            key,
+                            () -> {
+                                compiledPtr[0] = compileSource(js);
+                                return readCompiled(compiledPtr[0]);
+                            });
+        } catch (RuntimeException e) {
+            // e.g. the cache failed to store the bytecode
+            if (compiledPtr[0] != 0) {
+                free(compiledPtr[0]);
+            }
+            throw e;
+        }
+        var cacheHit = compiledPtr[0] == 0;
+        bytecodeKeys.put(bytecode, key);
+        var codePtr = cacheHit ? writeCompiled(bytecode) : compiledPtr[0];
+        reportedCode.put(codePtr, bytecode);
+        if (metrics != null) {
+            metrics.compiled(System.nanoTime() - start, cacheHit);
         }
+        commitCompileEvent(event, js, key, cacheHit);
+        return codePtr; // 32 bit
+    }
 
-        byte[] jsCode = js;
+    // as compileRaw, without copying cached bytecode in and out of the guest memory
+    private byte[] compileToBytecode(ScriptKey key, byte[] js) {
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        var event = new JfrEvents.Compile();
+        event.begin();
+        var cacheHit = new boolean[] {true};
+        var bytecode =
+                cache.computeIfAbsent(
+                        key,
+                        () -> {
+                            cacheHit[0] = false;
+                            int codePtr = compileSource(js);
+                            try {
+                                return readCompiled(codePtr);
+                            } finally {
+                                free(codePtr);
+                            }
+                        });
+        if (metrics != null) {
+            metrics.compiled(System.nanoTime() - start, cacheHit[0]);
+        }
+        bytecodeKeys.put(bytecode, key);
+        commitCompileEvent(event, js, key, cacheHit[0]);
+        return bytecode;
+    }
 
+    public ScriptKey scriptKey(byte[] js) {
+        return cache.key(js);
+    }
+
+    private int compileSource(byte[] jsCode) {
         var ptr =
                 exports.cabiRealloc(
                         0, // original_ptr
@@ -397,7 +1025,13 @@ public final class Engine implements AutoCloseable {
 
         exports.memory().write(ptr, jsCode);
         try {
-            var aggregatedCodePtr = exports.compileSrc(ptr, jsCode.length);
+            int aggregatedCodePtr;
+            var guest = enterGuest();
+            try {
+                aggregatedCodePtr = exports.compileSrc(ptr, jsCode.length);
+            } finally {
+                exitGuest(guest);
+            }
             exports.abiFree(
                     ptr, // ptr
                     jsCode.length, // length
@@ -407,9 +1041,7 @@ public final class Engine implements AutoCloseable {
             // TODO: debug
             // System.out.println("Final JavaScript RAW:\n" + new String(jsCode, UTF_8));
 
-            cache.set(js, readCompiled(aggregatedCodePtr));
-
-            return aggregatedCodePtr; // 32 bit
+            return aggregatedCodePtr;
         } catch (TrapException e) {
             try {
                 stderr.flush();
@@ -422,17 +1054,33 @@ public final class Engine implements AutoCloseable {
                     "Failed to compile JS code:\n"
                             + new String(jsCode, UTF_8)
                             + "\nstderr: "
-                            + stderr.toString(UTF_8)
+                            + captured(stderr)
                             + "\nstdout: "
-                            + stdout.toString(UTF_8),
+                            + captured(stdout),
                     e);
         }
     }
 
+    // the digest of the ScriptKey, as in the Exec events, to correlate the two
+    private static void commitCompileEvent(
+            JfrEvents.Compile event, byte[] js, ScriptKey key, boolean cacheHit) {
+        if (event.shouldCommit()) {
+            event.scriptDigest = JfrEvents.digest(key);
+            event.codeSize = js.length;
+            event.cacheHit = cacheHit;
+            event.commit();
+        }
+    }
+
     public void exec(int codePtr) {
         var ptr = exports.memory().readInt(codePtr);
         var codeLength = exports.memory().readInt(codePtr + 4);
 
+        long start = (metrics == null) ? 0 : System.nanoTime();
+        var event = new JfrEvents.Exec();
+        event.begin();
+        hostRefs.enterScope();
+        var guest = enterGuest();
         try {
             exports.eval(
                     ptr, // bytecode_ptr
@@ -450,10 +1098,100 @@ public final class Engine implements AutoCloseable {
 
             throw new GuestException(
                     "An exception occurred during the execution.\nstderr: "
-                            + stderr.toString(UTF_8)
+                            + captured(stderr)
                             + "\nstdout: "
-                            + stdout.toString(UTF_8));
+                            + captured(stdout));
+        } finally {
+            exitGuest(guest);
+            hostRefs.exitScope();
+            if (metrics != null) {
+                metrics.executed(System.nanoTime() - start);
+                metrics.memorySize((long) instance.memory().pages() * Memory.PAGE_SIZE);
+            }
+            if (event.shouldCommit()) {
+                event.scriptDigest = JfrEvents.digest(reportedKey(codePtr));
+                event.bytecodeSize = codeLength;
+                event.commit();
+            }
+        }
+    }
+
+    public void exec(ScriptHandle script) {
+        exec(codePtr(script));
+    }
+
+    // bytecode that hasn't been compiled by this Engine is hashed once, when first reported
+    private ScriptKey reportedKey(int codePtr) {
+        var bytecode = reportedCode.get(codePtr);
+        if (bytecode == null) {
+            return null;
+        }
+        return bytecodeKeys.computeIfAbsent(bytecode, cache::key);
+    }
+
+    // copies the bytecode in the guest memory once, it stays there until released
+    public ScriptHandle load(byte[] compiledCode) {
+        var script = new ScriptHandle(this, writeCompiled(compiledCode), compiledCode);
+        scripts.add(script);
+        return script;
+    }
+
+    public void release(ScriptHandle script) {
+        var codePtr = codePtr(script);
+        script.invalidate();
+        scripts.remove(script);
+        free(codePtr);
+        exports.abiFree(codePtr, 8, ALIGNMENT);
+    }
+
+    private int codePtr(ScriptHandle script) {
+        if (script.engine() != this) {
+            throw new IllegalArgumentException("The script has been loaded by another Engine");
+        }
+        if (!script.isLive()) {
+            throw new IllegalStateException(
+                    "The script has been released, or discarded by a reset");
+        }
+        return script.codePtr();
+    }
+
+    // a reference to a Java object that can be passed to JS, owned by the caller
+    public HostRef createHostRef(Object ref) {
+        return new HostRef(hostRefs.addUnscoped(ref), ref);
+    }
+
+    // from JS: quickjs4j_engine.release_host_ref(ref)
+    public void releaseHostRef(HostRef ref) {
+        hostRefs.release(ref.pointer());
+    }
+
+    // number of live HostRefs
+    public int hostRefCount() {
+        return hostRefs.size();
+    }
+
+    // budget of fuel for the next executions, -1 disables the limit, requires
+    // Builder.withFuelMetering
+    public void setFuel(long fuel) {
+        meteredMemory().setFuel(fuel);
+    }
+
+    // fuel consumed since the last call to setFuel
+    public long fuelConsumed() {
+        return meteredMemory().consumed();
+    }
+
+    // the guest ran out of fuel in the middle of an operation, reset the Engine before reusing it
+    boolean isOutOfFuel() {
+        return meteredMemory != null && meteredMemory.exhausted();
+    }
+
+    private MeteredMemory meteredMemory() {
+        if (meteredMemory == null) {
+            throw new IllegalStateException(
+                    "Fuel metering is not enabled, build the Engine with withFuelMetering(true)");
         }
+        return meteredMemory;
     }
 
     public String stdout() {
@@ -463,7 +1201,10 @@ public final class Engine implements AutoCloseable {
             throw new RuntimeException("Failed to flush stdout");
         }
 
-        return stdout.toString(UTF_8);
+        if (!retains(stdout)) {
+            throw new IllegalStateException("stdout is streamed and not retained by the Engine");
+        }
+        return captured(stdout);
     }
 
     public String stderr() {
@@ -473,10 +1214,28 @@ public final class Engine implements AutoCloseable {
             throw new RuntimeException("Failed to flush stderr");
         }
 
-        return stderr.toString(UTF_8);
+        if (!retains(stderr)) {
+            throw new IllegalStateException("stderr is streamed and not retained by the Engine");
+        }
+        return captured(stderr);
+    }
+
+    private static boolean retains(OutputStream out) {
+        return out instanceof ByteArrayOutputStream || out instanceof BoundedOutputStream;
+    }
+
+    // the output retained so far, streamed output has already been delivered to its sink
+    private static String captured(OutputStream out) {
+        if (out instanceof ByteArrayOutputStream) {
+            return ((ByteArrayOutputStream) out).toString(UTF_8);
+        } else if (out instanceof BoundedOutputStream) {
+            return ((BoundedOutputStream) out).toString(UTF_8);
+        }
+        return "<streamed>";
     }
 
     public void free(int codePtr) {
+        reportedCode.remove(codePtr);
         var ptr = exports.memory().readInt(codePtr);
         var codeLength = exports.memory().readInt(codePtr + 4);
 
@@ -491,7 +1250,16 @@ public final class Engine implements AutoCloseable {
         var ptr = exports.memory().readInt(codePtr);
         var codeLength = exports.memory().readInt(codePtr + 4);
 
-        return exports.memory().readBytes(ptr, codeLength);
+        var bytecode = exports.memory().readBytes(ptr, codeLength);
+        // the copy keeps the ScriptKey it has been compiled with
+        var reported = reportedCode.get(codePtr);
+        if (reported != null) {
+            var key = bytecodeKeys.get(reported);
+            if (key != null) {
+                bytecodeKeys.put(bytecode, key);
+            }
+        }
+        return bytecode;
     }
 
     public int writeCompiled(byte[] jsBytecode) {
@@ -515,30 +1283,73 @@ public final class Engine implements AutoCloseable {
 
         exports.memory().writeI32(ptr, codePtr);
         exports.memory().writeI32(ptr + 4, jsBytecode.length);
+        reportedCode.put(ptr, jsBytecode);
 
         return ptr;
     }
 
+    private static final class PortableLibrary {
+        private final String source;
+        private final byte[] code;
+        private final ScriptKey key;
+
+        private PortableLibrary(String source, byte[] code, ScriptKey key) {
+            this.source = source;
+            this.code = code;
+            this.key = key;
+        }
+    }
+
+    // the source is kept in the form it was passed, compared by identity first
+    static final class ResidentLibrary {
+        private final byte[] source;
+        private final String sourceString;
+        private final byte[] compiled;
+
+        // both forms are kept, encoded or decoded once when the library is made resident, so that
+        // the invocations with either form compare without converting the library
+        private ResidentLibrary(byte[] source, String sourceString, byte[] compiled) {
+            if (source == null && sourceString != null) {
+                source = sourceString.getBytes(UTF_8);
+            } else if (sourceString == null && source != null) {
+                sourceString = new String(source, UTF_8);
+            }
+            this.source = source;
+            this.sourceString = sourceString;
+            this.compiled = compiled;
+        }
+
+        boolean matchesSource(byte[] libraryCode) {
+            return source != null && (source == libraryCode || Arrays.equals(source, libraryCode));
+        }
+
+        boolean matchesSource(String libraryCode) {
+            return sourceString != null
+                    && (sourceString == libraryCode || sourceString.equals(libraryCode));
+        }
+
+        boolean matchesCompiled(byte[] compiledCode) {
+            return compiled == compiledCode || Arrays.equals(compiled, compiledCode);
+        }
+    }
+
     @Override
     public void close() {
         if (wasi != null) {
             wasi.close();
         }
-        if (stdout != null) {
-            try {
+        // the output streams passed to the Builder belong to the caller, e.g. System.out or a
+        // sink shared by the Engines of a pool, they are flushed and not closed. The ones created
+        // by the Builder retain the output in memory and have nothing to release.
+        try {
+            if (stdout != null) {
                 stdout.flush();
-                stdout.close();
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to close stdout", e);
             }
-        }
-        if (stderr != null) {
-            try {
+            if (stderr != null) {
                 stderr.flush();
-                stderr.close();
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to close stderr", e);
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush stdout/stderr", e);
         }
     }
 
@@ -548,9 +1359,16 @@ public final class Engine implements AutoCloseable {
         private ObjectMapper mapper;
         private Function<MemoryLimits, Memory> memoryFactory;
         private ScriptCache cache;
+        private boolean residentLibraries;
+        private boolean weakHostRefs;
+        private boolean scopedHostRefs;
+        private boolean fuelMetering;
+        private boolean freshInvocations;
+        private EngineMetrics metrics;
+        private EngineSnapshot snapshot;
         private Logger logger;
-        private ByteArrayOutputStream stdout;
-        private ByteArrayOutputStream stderr;
+        private OutputStream stdout;
+        private OutputStream stderr;
 
         private Builder() {}
 
@@ -579,28 +1397,76 @@ public final class Engine implements AutoCloseable {
             return this;
         }
 
+        // evaluate each library once per Engine and keep its state between invocations
+        public Builder withResidentLibraries(boolean residentLibraries) {
+            this.residentLibraries = residentLibraries;
+            return this;
+        }
+
+        // the HostRefs don't keep the Java objects alive, the application should
+        public Builder withWeakHostRefs(boolean weakHostRefs) {
+            this.weakHostRefs = weakHostRefs;
+            return this;
+        }
+
+        // HostRefs created while executing a script or invoking a guest function are released
+        // when it completes, from JS quickjs4j_engine.retain_host_ref(ref) keeps one alive
+        public Builder withScopedHostRefs(boolean scopedHostRefs) {
+            this.scopedHostRefs = scopedHostRefs;
+            return this;
+        }
+
+        // count the accesses of the guest code to its memory, so that executions can be bounded
+        // deterministically with setFuel. The initial state is kept to reset the Engine after
+        // running out of fuel, the Runner does it on its own
+        public Builder withFuelMetering(boolean fuelMetering) {
+            this.fuelMetering = fuelMetering;
+            return this;
+        }
+
+        // restore the state the Engine has been built with, or the snapshot, after every guest
+        // function invocation, isolating the invocations from each other
+        public Builder withFreshInvocations(boolean freshInvocations) {
+            this.freshInvocations = freshInvocations;
+            return this;
+        }
+
+        public Builder withMetrics(EngineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        // start from the state captured by Engine.snapshot() instead of a fresh runtime,
+        // the Engine should be configured with the same Builtins and Invokables
+        public Builder withSnapshot(EngineSnapshot snapshot) {
+            this.snapshot = snapshot;
+            return this;
+        }
+
         public Builder withLogger(Logger logger) {
             this.logger = logger;
             return this;
         }
 
-        public Builder withStdout(ByteArrayOutputStream stdout) {
+        // by default the output is retained in memory, use a BoundedOutputStream to cap it or
+        // a LineOutputStream to stream it, e.g. to a logger. The stream is not closed by the
+        // Engine.
+        public Builder withStdout(OutputStream stdout) {
             this.stdout = stdout;
             return this;
         }
 
-        public Builder withStderr(ByteArrayOutputStream stderr) {
+        public Builder withStderr(OutputStream stderr) {
             this.stderr = stderr;
             return this;
         }
 
+        // build can be invoked multiple times, e.g. by an EnginePool, the defaults are
+        // computed for each Engine so that no state is shared between them
         public Engine build() {
-            if (mapper == null) {
-                mapper = DEFAULT_OBJECT_MAPPER;
-            }
-            if (memoryFactory == null) {
-                memoryFactory = ByteArrayMemory::new;
-            }
+            var mapper = (this.mapper == null) ? DEFAULT_OBJECT_MAPPER : this.mapper;
+            Function<MemoryLimits, Memory> memoryFactory =
+                    (this.memoryFactory == null) ? ByteArrayMemory::new : this.memoryFactory;
             Map<String, Builtins> finalBuiltins = new HashMap<>();
             // TODO: any validation to be done here?
             for (var builtin : builtins) {
@@ -611,24 +1477,23 @@ public final class Engine implements AutoCloseable {
             for (var invokable : invokables) {
                 finalInvokables.put(invokable.moduleName(), invokable);
             }
-            if (cache == null) {
-                cache = new BasicScriptCache();
-            }
-            if (logger == null) {
-                logger = new SystemLogger();
-            }
-            if (stdout == null) {
-                stdout = new ByteArrayOutputStream();
-            }
-            if (stderr == null) {
-                stderr = new ByteArrayOutputStream();
-            }
+            var cache = (this.cache == null) ? new BasicScriptCache() : this.cache;
+            var logger = (this.logger == null) ? new SystemLogger() : this.logger;
+            var stdout = (this.stdout == null) ? new ByteArrayOutputStream() : this.stdout;
+            var stderr = (this.stderr == null) ? new ByteArrayOutputStream() : this.stderr;
             return new Engine(
                     finalBuiltins,
                     finalInvokables,
                     mapper,
                     memoryFactory,
                     cache,
+                    residentLibraries,
+                    weakHostRefs,
+                    scopedHostRefs,
+                    fuelMetering,
+                    freshInvocations,
+                    metrics,
+                    snapshot,
                     logger,
                     stdout,
                     stderr);
@@ -0,0 +1,29 @@
+package io.roastedroot.quickjs4j.core;
+
+// Listener notified by the Engine and the Runner, all the methods are no-ops by default.
+// Invoked synchronously on the executing thread, implementations should be cheap.
+// When no listener is configured no time is measured at all.
+public interface EngineMetrics {
+    // compileRaw, including the lookup in the ScriptCache
+    default void compiled(long nanos, boolean cacheHit) {}
+
+    default void executed(long nanos) {}
+
+    // a guest function invoked from Java, including the marshalling of arguments and result
+    default void guestCall(String moduleName, String functionName, long nanos) {}
+
+    // a builtin invoked from JS, including the marshalling of arguments and result
+    default void hostCall(String moduleName, String functionName, long nanos) {}
+
+    // JSON payloads crossing the boundary through host calls
+    default void bytesToGuest(int bytes) {}
+
+    default void bytesFromGuest(int bytes) {}
+
+    // size of the guest linear memory after each execution
+    default void memorySize(long bytes) {}
+
+    // Runner only, time between the submission of a task and the start of its execution,
+    // including the wait for an Engine of the EnginePool
+    default void queued(long nanos) {}
+}
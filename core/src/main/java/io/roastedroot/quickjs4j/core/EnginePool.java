@@ -0,0 +1,201 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// A pool of engines, each Engine is single threaded and is handed out to one caller at a time.
+public final class EnginePool implements AutoCloseable {
+    private final Supplier<Engine> engineFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final int checkoutTimeoutMs;
+
+    private final BlockingDeque<Engine> idle = new LinkedBlockingDeque<>();
+    private final Set<Engine> engines = ConcurrentHashMap.newKeySet();
+    private final Set<Engine> checkedOut = ConcurrentHashMap.newKeySet();
+    // one permit per Engine that can still be checked out
+    private final Semaphore available;
+    private volatile boolean closed;
+
+    private EnginePool(
+            Supplier<Engine> engineFactory, int minSize, int maxSize, int checkoutTimeoutMs) {
+        this.engineFactory = engineFactory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.checkoutTimeoutMs = checkoutTimeoutMs;
+        this.available = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < minSize; i++) {
+            idle.add(create());
+        }
+    }
+
+    private Engine create() {
+        var engine = engineFactory.get();
+        engines.add(engine);
+        return engine;
+    }
+
+    public Engine checkout() {
+        if (closed) {
+            throw new IllegalStateException("The EnginePool is closed");
+        }
+        try {
+            if (checkoutTimeoutMs == -1) {
+                available.acquire();
+            } else if (!available.tryAcquire(checkoutTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException(
+                        "Timeout while waiting for an available Engine", new TimeoutException());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread interrupted", e);
+        }
+
+        var engine = idle.pollFirst();
+        if (engine == null) {
+            try {
+                engine = create();
+            } catch (RuntimeException e) {
+                available.release();
+                throw e;
+            }
+        }
+        checkedOut.add(engine);
+        return engine;
+    }
+
+    // an Engine is checked in, or discarded, exactly once per checkout
+    private void release(Engine engine) {
+        if (!engines.contains(engine)) {
+            throw new IllegalArgumentException("The Engine doesn't belong to this EnginePool");
+        }
+        if (!checkedOut.remove(engine)) {
+            throw new IllegalStateException("The Engine is not checked out");
+        }
+    }
+
+    public void checkin(Engine engine) {
+        release(engine);
+        if (closed) {
+            discard(engine);
+            return;
+        }
+        // most recently used engines are handed out first
+        idle.addFirst(engine);
+        available.release();
+    }
+
+    // to be used in place of checkin when the Engine is in an unknown state,
+    // e.g. the execution has been interrupted or failed in the middle
+    public void discard(Engine engine) {
+        release(engine);
+        engines.remove(engine);
+        try {
+            engine.close();
+        } finally {
+            try {
+                refill();
+            } finally {
+                available.release();
+            }
+        }
+    }
+
+    // replaces a discarded Engine while still holding its permit, so that maxSize is never
+    // exceeded, a failure is left to the next checkout
+    private void refill() {
+        if (closed || engines.size() >= minSize) {
+            return;
+        }
+        try {
+            idle.addFirst(create());
+        } catch (RuntimeException e) {
+            // the next checkout creates the Engine on demand
+        }
+    }
+
+    public int minSize() {
+        return minSize;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return engines.size();
+    }
+
+    public int idleSize() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Engine engine;
+        while ((engine = idle.pollFirst()) != null) {
+            engines.remove(engine);
+            engine.close();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private Supplier<Engine> engineFactory;
+        private int minSize = 1;
+        private int maxSize = Runtime.getRuntime().availableProcessors();
+        private int checkoutTimeoutMs = -1;
+
+        private Builder() {}
+
+        // all the engines should be configured with the same Builtins and Invokables,
+        // e.g. withEngineFactory(Engine.builder().addBuiltins(...)::build)
+        public Builder withEngineFactory(Supplier<Engine> engineFactory) {
+            this.engineFactory = engineFactory;
+            return this;
+        }
+
+        public Builder withMinSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        public Builder withMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder withCheckoutTimeoutMs(int checkoutTimeoutMs) {
+            this.checkoutTimeoutMs = checkoutTimeoutMs;
+            return this;
+        }
+
+        public EnginePool build() {
+            if (engineFactory == null) {
+                engineFactory = () -> Engine.builder().build();
+            }
+            if (minSize < 0) {
+                throw new IllegalArgumentException("minSize should be positive, got: " + minSize);
+            }
+            if (maxSize < 1 || maxSize < minSize) {
+                throw new IllegalArgumentException(
+                        "maxSize should be at least 1 and greater or equal to minSize ("
+                                + minSize
+                                + "), got: "
+                                + maxSize);
+            }
+            return new EnginePool(engineFactory, minSize, maxSize, checkoutTimeoutMs);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.util.ArrayList;
+import java.util.Map;
+import run.endive.runtime.Instance;
+import run.endive.runtime.Memory;
+import run.endive.wasm.types.ExternalType;
+import run.endive.wasm.types.MutabilityType;
+
+// An immutable image of the guest linear memory and mutable globals of an initialized Engine,
+// new engines created from it skip the runtime initialization and the libraries evaluation.
+// It is safe to share a snapshot between threads.
+public final class EngineSnapshot {
+    private final int pages;
+    private final byte[] memory;
+    private final int[] globalIndexes;
+    private final long[] globalsLow;
+    private final long[] globalsHigh;
+
+    // Java side state that goes along with the guest memory
+    private final Map<String, Engine.ResidentLibrary> loadedLibraries;
+    private final byte[] dispatcherCode;
+    private final HostRefTable hostRefs;
+
+    private EngineSnapshot(
+            int pages,
+            byte[] memory,
+            int[] globalIndexes,
+            long[] globalsLow,
+            long[] globalsHigh,
+            Map<String, Engine.ResidentLibrary> loadedLibraries,
+            byte[] dispatcherCode,
+            HostRefTable hostRefs) {
+        this.pages = pages;
+        this.memory = memory;
+        this.globalIndexes = globalIndexes;
+        this.globalsLow = globalsLow;
+        this.globalsHigh = globalsHigh;
+        this.loadedLibraries = loadedLibraries;
+        this.dispatcherCode = dispatcherCode;
+        this.hostRefs = hostRefs;
+    }
+
+    static EngineSnapshot capture(
+            Instance instance,
+            Map<String, Engine.ResidentLibrary> loadedLibraries,
+            byte[] dispatcherCode,
+            HostRefTable hostRefs) {
+        var pages = instance.memory().pages();
+        var memory = instance.memory().readBytes(0, sizeInBytes(pages));
+
+        var module = instance.module();
+        var importedGlobals = module.importSection().count(ExternalType.GLOBAL);
+        var globals = module.globalSection().globals();
+        var mutableIndexes = new ArrayList<Integer>();
+        for (int i = 0; i < globals.length; i++) {
+            if (globals[i].mutabilityType() == MutabilityType.Var) {
+                mutableIndexes.add(importedGlobals + i);
+            }
+        }
+        var globalIndexes = new int[mutableIndexes.size()];
+        var globalsLow = new long[mutableIndexes.size()];
+        var globalsHigh = new long[mutableIndexes.size()];
+        for (int i = 0; i < globalIndexes.length; i++) {
+            globalIndexes[i] = mutableIndexes.get(i);
+            var global = instance.global(globalIndexes[i]);
+            globalsLow[i] = global.getValueLow();
+            globalsHigh[i] = global.getValueHigh();
+        }
+
+        return new EngineSnapshot(
+                pages,
+                memory,
+                globalIndexes,
+                globalsLow,
+                globalsHigh,
+                Map.copyOf(loadedLibraries),
+                dispatcherCode,
+                hostRefs.copy());
+    }
+
+    void restore(Instance instance) {
+        var target = instance.memory();
+        if (target.pages() < pages && target.grow(pages - target.pages()) == -1) {
+            throw new IllegalStateException(
+                    "Failed to grow the memory to the " + pages + " pages of the snapshot");
+        }
+        target.write(0, memory);
+        if (target.pages() > pages) {
+            target.fill((byte) 0, memory.length, sizeInBytes(target.pages()));
+        }
+
+        for (int i = 0; i < globalIndexes.length; i++) {
+            var global = instance.global(globalIndexes[i]);
+            global.setValueLow(globalsLow[i]);
+            global.setValueHigh(globalsHigh[i]);
+        }
+    }
+
+    int pages() {
+        return pages;
+    }
+
+    // the memory is copied in a single byte[], that can't hold 2 GiB
+    static int sizeInBytes(int pages) {
+        long size = (long) pages * Memory.PAGE_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException(
+                    "Can't snapshot a memory of "
+                            + pages
+                            + " pages ("
+                            + size
+                            + " bytes), the limit is "
+                            + (Integer.MAX_VALUE / Memory.PAGE_SIZE)
+                            + " pages");
+        }
+        return (int) size;
+    }
+
+    Map<String, Engine.ResidentLibrary> loadedLibraries() {
+        return loadedLibraries;
+    }
+
+    byte[] dispatcherCode() {
+        return dispatcherCode;
+    }
+
+    // each Engine gets its own copy of the table
+    HostRefTable hostRefs() {
+        return hostRefs.copy();
+    }
+
+    // size in bytes of the captured linear memory
+    public int memorySize() {
+        return memory.length;
+    }
+}
@@ -1,5 +1,6 @@
 package io.roastedroot.quickjs4j.core;
 
+import java.lang.reflect.Type;
 import java.util.List;
 
 public class GuestFunction {
@@ -8,26 +9,22 @@ public class GuestFunction {
     private final String globalName;
     private final List<Class> paramTypes;
     private final Class returnType;
-    private final HostFunction setResultHostFunction;
+    private final List<Type> genericParamTypes;
+    private final Type genericReturnType;
 
-    // this is surely not thread safe ...
-    private Object result;
-
-    public GuestFunction(String name, List<Class> paramTypes, Class returnType) {
+    // the types can be generic, e.g. List<Point>, values are decoded straight into them
+    public GuestFunction(String name, List<? extends Type> paramTypes, Type returnType) {
         this(name, name, paramTypes, returnType);
     }
 
-    public GuestFunction(String name, String globalName, List<Class> paramTypes, Class returnType) {
+    public GuestFunction(
+            String name, String globalName, List<? extends Type> paramTypes, Type returnType) {
         this.name = name;
         this.globalName = globalName;
-        this.paramTypes = paramTypes;
-        this.returnType = returnType;
-        this.setResultHostFunction =
-                new HostFunction(
-                        setResultFunName(),
-                        List.of(returnType),
-                        Void.class,
-                        (args) -> result = args.get(0));
+        this.genericParamTypes = List.copyOf(paramTypes);
+        this.genericReturnType = returnType;
+        this.paramTypes = HostFunction.rawClasses(paramTypes);
+        this.returnType = HostFunction.rawClass(returnType);
     }
 
     public String name() {
@@ -46,15 +43,16 @@ public class GuestFunction {
         return returnType;
     }
 
-    public String setResultFunName() {
-        return this.name + "_set_result";
+    public List<Type> genericParamTypes() {
+        return genericParamTypes;
     }
 
-    public HostFunction setResultHostFunction() {
-        return this.setResultHostFunction;
+    public Type genericReturnType() {
+        return genericReturnType;
     }
 
-    public Object getResult() {
-        return this.result;
+    // the results are collected per Engine, by a HostFunction with this name
+    public String setResultFunName() {
+        return this.name + "_set_result";
     }
 }
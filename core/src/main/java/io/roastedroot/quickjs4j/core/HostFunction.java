@@ -1,5 +1,11 @@
 package io.roastedroot.quickjs4j.core;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
@@ -7,22 +13,50 @@ public class HostFunction {
     private final String name;
     private final List<Class> paramTypes;
     private final Class returnType;
+    // the declared types, e.g. List<Point>, values are decoded straight into them
+    private final List<Type> genericParamTypes;
+    private final Type genericReturnType;
 
     // function implementation
     private final Function<List<Object>, Object> fn;
 
     public HostFunction(
             String name,
-            List<Class> paramTypes,
-            Class returnType,
+            List<? extends Type> paramTypes,
+            Type returnType,
             Function<List<Object>, Object> fn) {
         this.name = name;
-        this.paramTypes = paramTypes;
-        this.returnType = returnType;
+        this.genericParamTypes = List.copyOf(paramTypes);
+        this.genericReturnType = returnType;
+        this.paramTypes = rawClasses(paramTypes);
+        this.returnType = rawClass(returnType);
 
         this.fn = fn;
     }
 
+    static List<Class> rawClasses(List<? extends Type> types) {
+        var result = new ArrayList<Class>(types.size());
+        for (var type : types) {
+            result.add(rawClass(type));
+        }
+        return result;
+    }
+
+    static Class rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class) type;
+        } else if (type instanceof ParameterizedType) {
+            return rawClass(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            var component = rawClass(((GenericArrayType) type).getGenericComponentType());
+            return Array.newInstance(component, 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        }
+        // type variables
+        return Object.class;
+    }
+
     public Object invoke(List<Object> args) {
         return fn.apply(args);
     }
@@ -38,4 +72,12 @@ public class HostFunction {
     public Class returnType() {
         return returnType;
     }
+
+    public List<Type> genericParamTypes() {
+        return genericParamTypes;
+    }
+
+    public Type genericReturnType() {
+        return genericReturnType;
+    }
 }
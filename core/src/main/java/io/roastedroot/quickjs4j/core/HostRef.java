@@ -6,7 +6,7 @@ public final class HostRef {
     private final int ptr;
     private final Object ref;
 
-    private HostRef(int ptr, Object ref) {
+    HostRef(int ptr, Object ref) {
         this.ptr = ptr;
         this.ref = ref;
     }
@@ -28,7 +28,7 @@ public final class HostRef {
             return false;
         }
         HostRef ref = (HostRef) o;
-        return ptr == ref.ptr && Objects.equals(ref, ref.ref);
+        return ptr == ref.ptr && Objects.equals(this.ref, ref.ref);
     }
 
     @Override
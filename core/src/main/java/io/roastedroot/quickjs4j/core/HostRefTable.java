@@ -0,0 +1,154 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+// Handles of the Java objects passed to JS, released slots are reused.
+// Handles added while a scope is open are released when the outermost scope is closed,
+// unless retained.
+final class HostRefTable {
+    private static final Object FREE = new Object();
+
+    private final boolean weak;
+    private final boolean scoped;
+
+    private Object[] slots;
+    private boolean[] inScope;
+    private int size;
+    private int[] free;
+    private int freeCount;
+    private int count;
+
+    private int scopeDepth;
+    private int[] scopeHandles;
+    private int scopeCount;
+
+    HostRefTable(boolean weak, boolean scoped) {
+        this.weak = weak;
+        this.scoped = scoped;
+        this.slots = new Object[16];
+        this.inScope = new boolean[16];
+        this.free = new int[16];
+        this.scopeHandles = new int[16];
+    }
+
+    private HostRefTable(HostRefTable other) {
+        this.weak = other.weak;
+        this.scoped = other.scoped;
+        this.slots = other.slots.clone();
+        this.inScope = other.inScope.clone();
+        this.size = other.size;
+        this.free = other.free.clone();
+        this.freeCount = other.freeCount;
+        this.count = other.count;
+        this.scopeHandles = new int[16];
+    }
+
+    // a copy without open scopes, the references are shared
+    HostRefTable copy() {
+        return new HostRefTable(this);
+    }
+
+    // takes over the content of a copy, e.g. from an EngineSnapshot, the open scopes are closed
+    void restore(HostRefTable copy) {
+        this.slots = copy.slots;
+        this.inScope = copy.inScope;
+        this.size = copy.size;
+        this.free = copy.free;
+        this.freeCount = copy.freeCount;
+        this.count = copy.count;
+        this.scopeDepth = 0;
+        this.scopeCount = 0;
+    }
+
+    int add(Object ref) {
+        return addHandle(ref, scoped && scopeDepth > 0);
+    }
+
+    // handles created from Java are owned by the caller and never scoped
+    int addUnscoped(Object ref) {
+        return addHandle(ref, false);
+    }
+
+    private int addHandle(Object ref, boolean temporary) {
+        int handle;
+        if (freeCount > 0) {
+            handle = free[--freeCount];
+        } else {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                inScope = Arrays.copyOf(inScope, size * 2);
+            }
+            handle = size++;
+        }
+        slots[handle] = (weak && ref != null) ? new WeakReference<>(ref) : ref;
+        inScope[handle] = temporary;
+        if (temporary) {
+            if (scopeCount == scopeHandles.length) {
+                scopeHandles = Arrays.copyOf(scopeHandles, scopeCount * 2);
+            }
+            scopeHandles[scopeCount++] = handle;
+        }
+        count++;
+        return handle;
+    }
+
+    Object get(int handle) {
+        checkHandle(handle);
+        var ref = slots[handle];
+        if (weak && ref instanceof WeakReference) {
+            ref = ((WeakReference<?>) ref).get();
+            if (ref == null) {
+                throw new IllegalStateException(
+                        "The HostRef " + handle + " has been garbage collected");
+            }
+        }
+        return ref;
+    }
+
+    void release(int handle) {
+        checkHandle(handle);
+        slots[handle] = FREE;
+        inScope[handle] = false;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = handle;
+        count--;
+    }
+
+    // keeps a handle alive after the current scope is closed
+    void retain(int handle) {
+        checkHandle(handle);
+        inScope[handle] = false;
+    }
+
+    void enterScope() {
+        scopeDepth++;
+    }
+
+    void exitScope() {
+        if (--scopeDepth > 0) {
+            return;
+        }
+        for (int i = 0; i < scopeCount; i++) {
+            var handle = scopeHandles[i];
+            // skip the handles already released, and possibly reused, in the meantime
+            if (inScope[handle]) {
+                release(handle);
+            }
+        }
+        scopeCount = 0;
+    }
+
+    private void checkHandle(int handle) {
+        if (handle < 0 || handle >= size || slots[handle] == FREE) {
+            throw new IllegalArgumentException("Invalid or released HostRef " + handle);
+        }
+    }
+
+    // number of live handles
+    int size() {
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package io.roastedroot.quickjs4j.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Flight Recorder events, the fields are only computed when the event is enabled, e.g.:
+//   var event = new JfrEvents.Compile();
+//   event.begin();
+//   ...
+//   if (event.shouldCommit()) { ...; event.commit(); }
+final class JfrEvents {
+    private static final String CATEGORY = "QuickJs4J";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JfrEvents() {}
+
+    // the hex encoded ScriptKey, computed once per script and not per event, the same script has
+    // the same digest across recordings as long as the ScriptHasher is the same
+    static String digest(ScriptKey key) {
+        if (key == null) {
+            return null;
+        }
+        var hash = key.bytes();
+        var result = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            result[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            result[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(result);
+    }
+
+    @Name("io.roastedroot.quickjs4j.Compile")
+    @Label("JS Compilation")
+    @Category(CATEGORY)
+    static final class Compile extends Event {
+        @Label("Script Digest")
+        String scriptDigest;
+
+        @Label("Code Size")
+        @DataAmount
+        int codeSize;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+    }
+
+    @Name("io.roastedroot.quickjs4j.Exec")
+    @Label("JS Execution")
+    @Category(CATEGORY)
+    static final class Exec extends Event {
+        @Label("Script Digest")
+        String scriptDigest;
+
+        @Label("Bytecode Size")
+        @DataAmount
+        int bytecodeSize;
+    }
+
+    @Name("io.roastedroot.quickjs4j.HostCall")
+    @Label("Host Call")
+    @Description("A Java builtin invoked from JS")
+    @Category(CATEGORY)
+    static final class HostCall extends Event {
+        @Label("Module Name")
+        String moduleName;
+
+        @Label("Function Name")
+        String functionName;
+
+        @Label("Arguments Size")
+        @DataAmount
+        int argsSize;
+
+        @Label("Result Size")
+        @DataAmount
+        int resultSize;
+    }
+
+    @Name("io.roastedroot.quickjs4j.RunnerTask")
+    @Label("Runner Task")
+    @Description("A task submitted to a Runner, including the wait for an Engine")
+    @Category(CATEGORY)
+    static final class RunnerTask extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Module Name")
+        String moduleName;
+
+        @Label("Function Name")
+        String functionName;
+
+        @Label("Timeout")
+        @Timespan(Timespan.MILLISECONDS)
+        long timeout;
+
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+}
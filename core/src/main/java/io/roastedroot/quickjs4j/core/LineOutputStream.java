@@ -0,0 +1,120 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+// Streams the guest output line by line to a consumer, e.g. a logger, without retaining it.
+// Only the current line is buffered, longer lines are split at maxLineBytes, or before the
+// last code point when it is incomplete.
+public class LineOutputStream extends OutputStream {
+    private static final int DEFAULT_MAX_LINE_BYTES = 64 * 1024;
+
+    private final Consumer<String> consumer;
+    private final int maxLineBytes;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    public LineOutputStream(Consumer<String> consumer) {
+        this(consumer, DEFAULT_MAX_LINE_BYTES);
+    }
+
+    public LineOutputStream(Consumer<String> consumer, int maxLineBytes) {
+        if (maxLineBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "maxLineBytes must be positive, got: " + maxLineBytes);
+        }
+        this.consumer = consumer;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n') {
+            emit();
+            return;
+        }
+        if (line.size() >= maxLineBytes) {
+            split();
+        }
+        line.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == '\n') {
+                append(b, start, i - start);
+                emit();
+                start = i + 1;
+            }
+        }
+        append(b, start, end - start);
+    }
+
+    private void append(byte[] b, int off, int len) {
+        while (len > 0) {
+            // split only when more bytes arrive, a full line followed by a newline is not
+            // delivered twice
+            if (line.size() >= maxLineBytes) {
+                split();
+            }
+            // at least a byte, to complete a code point carried over by the split
+            int count = Math.max(1, Math.min(len, maxLineBytes - line.size()));
+            line.write(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    private void emit() {
+        var bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        line.reset();
+        consumer.accept(new String(bytes, 0, length, UTF_8));
+    }
+
+    // the bytes of an incomplete trailing code point are kept for the next part of the line
+    private void split() {
+        var bytes = line.toByteArray();
+        int length = completeLength(bytes);
+        if (length == 0) {
+            // a single code point longer than maxLineBytes, not split
+            return;
+        }
+        line.reset();
+        line.write(bytes, length, bytes.length - length);
+        consumer.accept(new String(bytes, 0, length, UTF_8));
+    }
+
+    // the length up to the last complete UTF-8 code point, invalid sequences are not held back
+    private static int completeLength(byte[] bytes) {
+        int length = bytes.length;
+        for (int i = length - 1; i >= Math.max(0, length - 4); i--) {
+            int b = bytes[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue; // continuation byte
+            }
+            if (b < 0xC2 || b > 0xF4) {
+                return length; // ASCII or not a lead byte
+            }
+            int expected = (b >= 0xF0) ? 4 : (b >= 0xE0) ? 3 : 2;
+            return (i + expected > length) ? i : length;
+        }
+        return length;
+    }
+
+    // a trailing line without newline is delivered on close
+    @Override
+    public synchronized void close() {
+        if (line.size() > 0) {
+            emit();
+        }
+    }
+}
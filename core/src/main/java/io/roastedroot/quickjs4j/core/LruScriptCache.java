@@ -0,0 +1,95 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A thread-safe ScriptCache bounded by number of entries and total size of the compiled
+// bytecode, the least recently used entries are evicted first.
+public class LruScriptCache implements ScriptCache, AutoCloseable {
+    private final int maxEntries;
+    private final long maxBytes;
+    // access ordered, guarded by this
+    private final LinkedHashMap<ScriptKey, byte[]> cache;
+    private long bytes;
+    private final ScriptHasher hasher;
+
+    public LruScriptCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    public LruScriptCache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, ScriptHasher.sha256());
+    }
+
+    public LruScriptCache(int maxEntries, long maxBytes, String messageDigestAlgorithm) {
+        this(maxEntries, maxBytes, ScriptHasher.messageDigest(messageDigestAlgorithm));
+    }
+
+    public LruScriptCache(int maxEntries, long maxBytes, ScriptHasher hasher) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(
+                    "maxEntries should be at least 1, got: " + maxEntries);
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes should be at least 1, got: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.hasher = hasher;
+    }
+
+    @Override
+    public ScriptKey key(byte[] code) {
+        return ScriptKey.of(hasher, code);
+    }
+
+    @Override
+    public boolean exists(byte[] code) {
+        var key = key(code);
+        synchronized (this) {
+            // doesn't count as an access
+            return cache.containsKey(key);
+        }
+    }
+
+    @Override
+    public synchronized byte[] get(ScriptKey key) {
+        return cache.get(key);
+    }
+
+    @Override
+    public synchronized void set(ScriptKey key, byte[] compiled) {
+        var previous = cache.put(key, compiled);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += compiled.length;
+        evict();
+    }
+
+    // the most recent entry is kept even if it exceeds maxBytes on its own
+    private void evict() {
+        var it = cache.entrySet().iterator();
+        while (cache.size() > 1 && (cache.size() > maxEntries || bytes > maxBytes)) {
+            Map.Entry<ScriptKey, byte[]> eldest = it.next();
+            bytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    // total size of the cached bytecode
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        cache.clear();
+        bytes = 0;
+    }
+}
@@ -0,0 +1,258 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.nio.charset.Charset;
+import run.endive.runtime.Instance;
+import run.endive.runtime.Memory;
+import run.endive.wasm.types.DataSegment;
+
+// Consumes one unit of fuel on every access to the guest memory.
+// The plugin is compiled ahead of time and can't be instrumented per instruction, but the
+// QuickJS interpreter touches the linear memory on every opcode it executes, so the count
+// of memory accesses is a deterministic measure of the work done by the guest.
+// Only the accesses done while the guest code runs are metered, not the ones of the host
+// reading arguments, writing results or freeing memory.
+final class MeteredMemory implements Memory {
+    private final Memory delegate;
+
+    private boolean metering;
+    private boolean guest;
+    private boolean exhausted;
+    private long fuel;
+    private long consumed;
+
+    MeteredMemory(Memory delegate) {
+        this.delegate = delegate;
+    }
+
+    void setFuel(long fuel) {
+        this.metering = fuel >= 0;
+        this.exhausted = false;
+        this.fuel = fuel;
+        this.consumed = 0;
+    }
+
+    // returns the previous state, to be restored when the guest code, or the host, returns
+    boolean guest(boolean guest) {
+        var previous = this.guest;
+        this.guest = guest;
+        return previous;
+    }
+
+    // the guest has been stopped in the middle of an operation, its state is unknown
+    boolean exhausted() {
+        return exhausted;
+    }
+
+    long consumed() {
+        return consumed;
+    }
+
+    long remaining() {
+        return metering ? fuel - consumed : -1;
+    }
+
+    private void consume() {
+        if (metering && guest && ++consumed > fuel) {
+            // stop metering so that the host can still clean up the guest state
+            metering = false;
+            exhausted = true;
+            throw new OutOfFuelException("The execution exhausted its fuel of " + fuel);
+        }
+    }
+
+    @Override
+    public int pages() {
+        return delegate.pages();
+    }
+
+    @Override
+    public int grow(int size) {
+        consume();
+        return delegate.grow(size);
+    }
+
+    @Override
+    public int initialPages() {
+        return delegate.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return delegate.maximumPages();
+    }
+
+    @Override
+    public boolean shared() {
+        return delegate.shared();
+    }
+
+    @Override
+    public Object lock(int address) {
+        return delegate.lock(address);
+    }
+
+    @Override
+    public int waitOn(int address, int expected, long timeout) {
+        consume();
+        return delegate.waitOn(address, expected, timeout);
+    }
+
+    @Override
+    public int waitOn(int address, long expected, long timeout) {
+        consume();
+        return delegate.waitOn(address, expected, timeout);
+    }
+
+    @Override
+    public int notify(int address, int maxThreads) {
+        consume();
+        return delegate.notify(address, maxThreads);
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        delegate.initialize(instance, dataSegments);
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        consume();
+        delegate.initPassiveSegment(segmentId, dest, offset, size);
+    }
+
+    @Override
+    public void write(int addr, byte[] data) {
+        consume();
+        delegate.write(addr, data);
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        consume();
+        delegate.write(addr, data, offset, size);
+    }
+
+    @Override
+    public String readString(int addr, int len, Charset charSet) {
+        consume();
+        return delegate.readString(addr, len, charSet);
+    }
+
+    @Override
+    public byte read(int addr) {
+        consume();
+        return delegate.read(addr);
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        consume();
+        return delegate.readBytes(addr, len);
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        consume();
+        delegate.writeI32(addr, data);
+    }
+
+    @Override
+    public int readInt(int addr) {
+        consume();
+        return delegate.readInt(addr);
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        consume();
+        delegate.writeLong(addr, data);
+    }
+
+    @Override
+    public long readLong(int addr) {
+        consume();
+        return delegate.readLong(addr);
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        consume();
+        delegate.writeShort(addr, data);
+    }
+
+    @Override
+    public short readShort(int addr) {
+        consume();
+        return delegate.readShort(addr);
+    }
+
+    @Override
+    public long readU16(int addr) {
+        consume();
+        return delegate.readU16(addr);
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        consume();
+        delegate.writeByte(addr, data);
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        consume();
+        delegate.writeF32(addr, data);
+    }
+
+    @Override
+    public long readF32(int addr) {
+        consume();
+        return delegate.readF32(addr);
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        consume();
+        return delegate.readFloat(addr);
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        consume();
+        delegate.writeF64(addr, data);
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        consume();
+        return delegate.readDouble(addr);
+    }
+
+    @Override
+    public long readF64(int addr) {
+        consume();
+        return delegate.readF64(addr);
+    }
+
+    @Override
+    public void zero() {
+        delegate.zero();
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        consume();
+        delegate.fill(value, fromIndex, toIndex);
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        consume();
+        delegate.copy(dest, src, size);
+    }
+
+    @Override
+    public void drop(int segment) {
+        delegate.drop(segment);
+    }
+}
@@ -0,0 +1,7 @@
+package io.roastedroot.quickjs4j.core;
+
+public class OutOfFuelException extends RuntimeException {
+    public OutOfFuelException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,371 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// A ScriptCache persisted in an append only file, so that compiled bytecode survives
+// JVM restarts. Entries are read through a memory mapped buffer and only an index of
+// offsets is kept on heap.
+//
+// The file is bound to the quickjs4j Version and to a digest of the javy plugin, bytecode
+// produced by a different version, or by a rebuilt plugin with an unchanged version (e.g. a
+// SNAPSHOT), is never served. Only one process at a time writes to the file, the one holding
+// the lock on the companion .lock file, others use it read only and pick up the entries
+// appended since they opened it.
+// The file is never truncated while other processes might have it mapped: a file written by a
+// different version is replaced by an atomic rename and a truncated record is overwritten.
+//
+// File layout:
+//   header: MAGIC | version length (int) | version (UTF-8) | plugin length (int) | plugin
+//   record: key length (int) | value length (int) | crc32 of key and value (int) | key | value
+public class PersistentScriptCache implements ScriptCache, AutoCloseable {
+    private static final byte[] MAGIC = "QJS4JBC2".getBytes(UTF_8);
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private final Path file;
+    private final byte[] version;
+    private final byte[] plugin;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ScriptHasher hasher;
+
+    // guarded by this
+    private final Map<ScriptKey, Entry> index = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    // the end of the valid records, 0 when the header has not been read yet
+    private long end;
+    private boolean closed;
+
+    public PersistentScriptCache(Path directory) {
+        this(directory, ScriptHasher.sha256());
+    }
+
+    public PersistentScriptCache(Path directory, ScriptHasher hasher) {
+        this(directory, Version.version, PluginDigest.VALUE, hasher);
+    }
+
+    PersistentScriptCache(Path directory, String version, byte[] plugin, ScriptHasher hasher) {
+        this.hasher = hasher;
+        this.version = version.getBytes(UTF_8);
+        this.plugin = plugin;
+        this.file =
+                directory.resolve("quickjs4j-" + version.replaceAll("[^\\w.-]", "_") + ".cache");
+        try {
+            Files.createDirectories(directory);
+            // the data file might be replaced, the lock is held on a file that never is
+            this.lockChannel =
+                    FileChannel.open(
+                            file.resolveSibling(file.getFileName() + ".lock"),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE);
+            this.lock = tryLock(lockChannel);
+            this.channel = open(file);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the script cache " + file, e);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // already locked by another cache instance in this JVM
+            return null;
+        }
+    }
+
+    private void load() throws IOException {
+        refresh();
+        if (lock != null && end == 0) {
+            // new file, or written by a different version
+            index.clear();
+            writeHeader();
+        }
+    }
+
+    // maps the file again and indexes the records appended since the last scan
+    private void refresh() throws IOException {
+        var size = channel.size();
+        if (size <= end || size > Integer.MAX_VALUE) {
+            // keep the bytecode mappable with a single buffer
+            return;
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        var buffer = mapped.duplicate();
+        try {
+            if (end == 0) {
+                if (!readHeader(buffer)) {
+                    return;
+                }
+                end = buffer.position();
+            } else {
+                buffer.position((int) end);
+            }
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                var keyLength = buffer.getInt();
+                var valueLength = buffer.getInt();
+                var crc = buffer.getInt();
+                if (keyLength < 0
+                        || valueLength < 0
+                        || keyLength + (long) valueLength > buffer.remaining()) {
+                    break;
+                }
+                var key = new byte[keyLength];
+                buffer.get(key);
+                var valueOffset = buffer.position();
+                var value = buffer.slice();
+                value.limit(valueLength);
+                if (crc != crc(key, value)) {
+                    break;
+                }
+                buffer.position(valueOffset + valueLength);
+                index.put(new ScriptKey(key), new Entry(valueOffset, valueLength));
+                end = buffer.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // truncated record, e.g. the process died in the middle of a write, or a record
+            // still being written by another process
+        }
+    }
+
+    private boolean readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length + 4) {
+            return false;
+        }
+        var magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        var versionLength = buffer.getInt();
+        if (!Arrays.equals(MAGIC, magic) || versionLength != version.length) {
+            return false;
+        }
+        var fileVersion = new byte[versionLength];
+        buffer.get(fileVersion);
+        if (!Arrays.equals(version, fileVersion)) {
+            return false;
+        }
+        var pluginLength = buffer.getInt();
+        if (pluginLength != plugin.length) {
+            return false;
+        }
+        var filePlugin = new byte[pluginLength];
+        buffer.get(filePlugin);
+        return Arrays.equals(plugin, filePlugin);
+    }
+
+    private void writeHeader() throws IOException {
+        var header = ByteBuffer.allocate(MAGIC.length + 4 + version.length + 4 + plugin.length);
+        header.put(MAGIC)
+                .putInt(version.length)
+                .put(version)
+                .putInt(plugin.length)
+                .put(plugin)
+                .flip();
+        if (channel.size() == 0) {
+            write(channel, header, 0);
+        } else {
+            // other processes might still read the old file, it is replaced, not truncated
+            var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var tmpChannel =
+                    FileChannel.open(
+                            tmp,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE)) {
+                write(tmpChannel, header, 0);
+                tmpChannel.force(false);
+            }
+            try {
+                Files.move(
+                        tmp,
+                        file,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel.close();
+            channel = open(file);
+        }
+        end = header.limit();
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static int crc(byte[] key, ByteBuffer value) {
+        var crc = new CRC32();
+        crc.update(key);
+        crc.update(value.duplicate());
+        return (int) crc.getValue();
+    }
+
+    // no need to salt the keys with the version, the file is bound to it
+    @Override
+    public ScriptKey key(byte[] code) {
+        return ScriptKey.of(hasher, code);
+    }
+
+    @Override
+    public boolean exists(byte[] code) {
+        var key = key(code);
+        synchronized (this) {
+            return !closed && entry(key) != null;
+        }
+    }
+
+    // guarded by this
+    private Entry entry(ScriptKey key) {
+        var entry = index.get(key);
+        if (entry == null && lock == null) {
+            // appended by the process writing the file since the last scan
+            try {
+                refresh();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map the script cache " + file, e);
+            }
+            entry = index.get(key);
+        }
+        return entry;
+    }
+
+    @Override
+    public synchronized byte[] get(ScriptKey key) {
+        if (closed) {
+            return null;
+        }
+        var entry = entry(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            if (entry.offset + entry.length > mapped.capacity()) {
+                // written after the last mapping
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map the script cache " + file, e);
+        }
+        var result = new byte[entry.length];
+        var buffer = mapped.duplicate();
+        buffer.position(entry.offset);
+        buffer.get(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void set(ScriptKey key, byte[] compiled) {
+        // the same code always compiles to the same bytecode
+        if (closed || lock == null || index.containsKey(key)) {
+            return;
+        }
+        // a truncated record left at the end, if any, is overwritten
+        var keyBytes = key.bytes();
+        var valueOffset = end + RECORD_HEADER_SIZE + keyBytes.length;
+        if (valueOffset + compiled.length > Integer.MAX_VALUE) {
+            return;
+        }
+        var record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + compiled.length);
+        record.putInt(keyBytes.length)
+                .putInt(compiled.length)
+                .putInt(crc(keyBytes, ByteBuffer.wrap(compiled)))
+                .put(keyBytes)
+                .put(compiled)
+                .flip();
+        try {
+            write(channel, record, end);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to the script cache " + file, e);
+        }
+        end += record.limit();
+        index.put(key, new Entry((int) valueOffset, compiled.length));
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.clear();
+        mapped = null;
+        try {
+            if (lock != null) {
+                channel.force(false);
+                lock.release();
+            }
+            channel.close();
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the script cache " + file, e);
+        }
+    }
+
+    // the data segments carry the QuickJS build: atoms, opcode tables and version strings,
+    // computed once per JVM
+    static final class PluginDigest {
+        static final byte[] VALUE = compute();
+
+        private PluginDigest() {}
+
+        private static byte[] compute() {
+            try {
+                var digest = MessageDigest.getInstance("SHA-256");
+                for (var segment : JavyPluginModule.load().dataSection().dataSegments()) {
+                    digest.update(segment.data());
+                }
+                return digest.digest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final int offset;
+        private final int length;
+
+        private Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
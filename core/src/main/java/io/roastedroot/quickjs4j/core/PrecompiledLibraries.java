@@ -0,0 +1,115 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Format of the libraries bytecode precompiled at build time by the annotation processor:
+//   MAGIC | version length (int) | version (UTF-8) | plugin length (int) | plugin | bytecode
+// QuickJS bytecode is only valid for the plugin it has been compiled with, as in the
+// PersistentScriptCache the version and a digest of the plugin are checked when loading, and
+// stale bytecode is not used.
+public final class PrecompiledLibraries {
+    public static final String RESOURCE_PREFIX = "META-INF/quickjs4j/";
+    public static final String RESOURCE_SUFFIX = ".qjsbc";
+
+    private static final byte[] MAGIC = "QJS4JLIB".getBytes(UTF_8);
+
+    private PrecompiledLibraries() {}
+
+    public static String resourceName(String moduleName) {
+        return RESOURCE_PREFIX + moduleName + RESOURCE_SUFFIX;
+    }
+
+    public static byte[] encode(byte[] bytecode) {
+        return encode(bytecode, Version.version, PersistentScriptCache.PluginDigest.VALUE);
+    }
+
+    static byte[] encode(byte[] bytecode, String version, byte[] plugin) {
+        var versionBytes = version.getBytes(UTF_8);
+        return ByteBuffer.allocate(
+                        MAGIC.length
+                                + 4
+                                + versionBytes.length
+                                + 4
+                                + plugin.length
+                                + bytecode.length)
+                .put(MAGIC)
+                .putInt(versionBytes.length)
+                .put(versionBytes)
+                .putInt(plugin.length)
+                .put(plugin)
+                .put(bytecode)
+                .array();
+    }
+
+    // null when the library has been precompiled by a different quickjs4j or plugin build
+    public static byte[] decode(byte[] library) {
+        return decode(library, Version.version, PersistentScriptCache.PluginDigest.VALUE);
+    }
+
+    static byte[] decode(byte[] library, String version, byte[] plugin) {
+        var buffer = ByteBuffer.wrap(library);
+        if (buffer.remaining() < MAGIC.length + 4) {
+            throw new IllegalArgumentException("Not a precompiled quickjs4j library");
+        }
+        var magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IllegalArgumentException("Not a precompiled quickjs4j library");
+        }
+        var versionLength = buffer.getInt();
+        if (versionLength < 0 || versionLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Not a precompiled quickjs4j library");
+        }
+        var libraryVersion = new byte[versionLength];
+        buffer.get(libraryVersion);
+        if (!Arrays.equals(version.getBytes(UTF_8), libraryVersion)
+                || buffer.remaining() < 4
+                || buffer.getInt() != plugin.length
+                || buffer.remaining() < plugin.length) {
+            return null;
+        }
+        var libraryPlugin = new byte[plugin.length];
+        buffer.get(libraryPlugin);
+        if (!Arrays.equals(plugin, libraryPlugin)) {
+            return null;
+        }
+        var bytecode = new byte[buffer.remaining()];
+        buffer.get(bytecode);
+        return bytecode;
+    }
+
+    // loads the bytecode of a module from the classpath of the given class, null when stale
+    public static byte[] load(Class<?> owner, String moduleName) {
+        var resource = resourceName(moduleName);
+        try (var is = owner.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IllegalArgumentException(
+                        "Failed to find the precompiled library " + resource);
+            }
+            return decode(is.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the precompiled library " + resource, e);
+        }
+    }
+
+    // the source of the library, compiled at runtime when the bytecode is stale
+    public static String loadSource(Class<?> owner, String library) {
+        try (var is = owner.getClassLoader().getResourceAsStream(library)) {
+            if (is == null) {
+                throw new IllegalStateException(
+                        "The precompiled library "
+                                + library
+                                + " has been built with a different quickjs4j or plugin, and its"
+                                + " source is not available to compile it again");
+            }
+            return new String(is.readAllBytes(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the library " + library, e);
+        }
+    }
+}
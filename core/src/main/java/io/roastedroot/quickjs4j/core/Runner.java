@@ -3,24 +3,42 @@ package io.roastedroot.quickjs4j.core;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 public final class Runner implements AutoCloseable {
     private final int timeoutMs;
     private final int compilationTimeoutMs;
+    private final long fuel;
+    private final EngineMetrics metrics;
+    // exactly one of engine and pool is set
     private final Engine engine;
+    private final EnginePool pool;
     private final ExecutorService es;
+    private final ReentrantLock engineLock = new ReentrantLock();
 
-    private Runner(Engine engine, int timeout, int compilationTimeout, ExecutorService es) {
+    private Runner(
+            Engine engine,
+            EnginePool pool,
+            int timeout,
+            int compilationTimeout,
+            long fuel,
+            EngineMetrics metrics,
+            ExecutorService es) {
         this.engine = engine;
+        this.pool = pool;
         this.es = es;
         this.timeoutMs = timeout;
         this.compilationTimeoutMs = compilationTimeout;
+        this.fuel = fuel;
+        this.metrics = metrics;
     }
 
     public byte[] compile(String code) {
@@ -29,7 +47,7 @@ public final class Runner implements AutoCloseable {
 
     public byte[] compile(byte[] code) {
         return submitWithTimeout(
-                () -> {
+                (engine) -> {
                     int codePtr = engine.compile(code);
                     try {
                         return engine.readCompiled(codePtr);
@@ -38,22 +56,67 @@ public final class Runner implements AutoCloseable {
                     }
                 },
                 this.compilationTimeoutMs,
-                "Timeout while compiling");
+                "Timeout while compiling",
+                taskEvent("compile", null, null));
+    }
+
+    // bytecode to be used with invokePrecompiledGuestFunction
+    public byte[] compilePortableGuestFunction(String libraryCode) {
+        return submitWithTimeout(
+                (engine) -> engine.compilePortableGuestFunction(libraryCode),
+                this.compilationTimeoutMs,
+                "Timeout while compiling",
+                taskEvent("compile", null, null));
     }
 
     public void exec(byte[] jsBytecode) {
         submitWithTimeout(
-                () -> {
+                (engine) -> {
                     int codePtr = engine.writeCompiled(jsBytecode);
                     try {
-                        this.engine.exec(codePtr);
+                        engine.exec(codePtr);
                     } finally {
                         engine.free(codePtr);
                     }
                     return null;
                 },
                 this.timeoutMs,
-                "Timeout while executing");
+                "Timeout while executing",
+                taskEvent("exec", null, null));
+    }
+
+    public void exec(ScriptHandle script) {
+        checkScriptHandles();
+        submitWithTimeout(
+                (engine) -> {
+                    engine.exec(script);
+                    return null;
+                },
+                this.timeoutMs,
+                "Timeout while executing",
+                taskEvent("exec", null, null));
+    }
+
+    // the handle is bound to the Engine of this Runner, not available with an EnginePool
+    public ScriptHandle load(byte[] jsBytecode) {
+        checkScriptHandles();
+        return submitWithTimeout(
+                (engine) -> engine.load(jsBytecode),
+                this.timeoutMs,
+                "Timeout while loading",
+                taskEvent("load", null, null));
+    }
+
+    public void release(ScriptHandle script) {
+        checkScriptHandles();
+        submitWithTimeout(
+                (engine) -> {
+                    engine.release(script);
+                    return null;
+                },
+                this.timeoutMs,
+                "Timeout while releasing",
+                taskEvent("release", null, null));
     }
 
     public void compileAndExec(String code) {
@@ -64,17 +127,128 @@ public final class Runner implements AutoCloseable {
     public Object invokeGuestFunction(
             String moduleName, String name, List<Object> args, String libraryCode) {
         return submitWithTimeout(
-                () -> engine.invokeGuestFunction(moduleName, name, args, libraryCode),
+                (engine) -> engine.invokeGuestFunction(moduleName, name, args, libraryCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunction", moduleName, name));
+    }
+
+    public Object invokeGuestFunction(
+            String moduleName, String name, ArgsWriter args, String libraryCode) {
+        return submitWithTimeout(
+                (engine) -> engine.invokeGuestFunction(moduleName, name, args, libraryCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunction", moduleName, name));
+    }
+
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, List<Object> args, byte[] compiledCode) {
+        return submitWithTimeout(
+                (engine) ->
+                        engine.invokePrecompiledGuestFunction(moduleName, name, args, compiledCode),
                 this.timeoutMs,
-                "Timeout while invoking guest function");
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunction", moduleName, name));
+    }
+
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, ArgsWriter args, byte[] compiledCode) {
+        return submitWithTimeout(
+                (engine) ->
+                        engine.invokePrecompiledGuestFunction(moduleName, name, args, compiledCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunction", moduleName, name));
+    }
+
+    public Object invokePrecompiledGuestFunction(
+            String moduleName, String name, List<Object> args, ScriptHandle library) {
+        checkScriptHandles();
+        return submitWithTimeout(
+                (engine) -> engine.invokePrecompiledGuestFunction(moduleName, name, args, library),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunction", moduleName, name));
+    }
+
+    public List<BatchResult> invokeGuestFunctionBatch(
+            String moduleName, String name, List<List<Object>> args, String libraryCode) {
+        return submitWithTimeout(
+                (engine) -> engine.invokeGuestFunctionBatch(moduleName, name, args, libraryCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunctionBatch", moduleName, name));
+    }
+
+    // the invocation is queued on the ExecutorService, the calling thread is not blocked
+    // and the timeout is enforced without a waiting thread
+    public CompletableFuture<Object> invokeGuestFunctionAsync(
+            String moduleName, String name, List<Object> args, String libraryCode) {
+        return submitAsync(
+                (engine) -> engine.invokeGuestFunction(moduleName, name, args, libraryCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunctionAsync", moduleName, name));
+    }
+
+    public CompletableFuture<Object> invokeGuestFunctionAsync(
+            String moduleName, String name, ArgsWriter args, String libraryCode) {
+        return submitAsync(
+                (engine) -> engine.invokeGuestFunction(moduleName, name, args, libraryCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunctionAsync", moduleName, name));
+    }
+
+    public CompletableFuture<Object> invokePrecompiledGuestFunctionAsync(
+            String moduleName, String name, List<Object> args, byte[] compiledCode) {
+        return submitAsync(
+                (engine) ->
+                        engine.invokePrecompiledGuestFunction(moduleName, name, args, compiledCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunctionAsync", moduleName, name));
+    }
+
+    public CompletableFuture<Object> invokePrecompiledGuestFunctionAsync(
+            String moduleName, String name, ArgsWriter args, byte[] compiledCode) {
+        return submitAsync(
+                (engine) ->
+                        engine.invokePrecompiledGuestFunction(moduleName, name, args, compiledCode),
+                this.timeoutMs,
+                "Timeout while invoking guest function",
+                taskEvent("invokeGuestFunctionAsync", moduleName, name));
     }
 
     public String stdout() {
-        return this.engine.stdout();
+        return singleEngine().stdout();
     }
 
     public String stderr() {
-        return this.engine.stderr();
+        return singleEngine().stderr();
+    }
+
+    // fuel consumed by the last execution
+    public long fuelConsumed() {
+        return singleEngine().fuelConsumed();
+    }
+
+    private void checkScriptHandles() {
+        if (engine == null) {
+            throw new UnsupportedOperationException(
+                    "Scripts are loaded in the memory of a single Engine, not supported with an"
+                            + " EnginePool");
+        }
+    }
+
+    private Engine singleEngine() {
+        if (engine == null) {
+            throw new UnsupportedOperationException(
+                    "The output is collected per Engine, configure the EnginePool engines to"
+                            + " access it");
+        }
+        return engine;
     }
 
     @Override
@@ -87,9 +261,137 @@ public final class Runner implements AutoCloseable {
         if (engine != null) {
             engine.close();
         }
+        if (pool != null) {
+            pool.close();
+        }
     }
 
-    private <T> T submitWithTimeout(Callable<T> task, int timeout, String timeoutMessage) {
+    private <T> Callable<T> toTask(Function<Engine, T> task) {
+        Function<Engine, T> engineTask;
+        if (fuel < 0) {
+            engineTask = task;
+        } else {
+            engineTask =
+                    (engine) -> {
+                        engine.setFuel(fuel);
+                        return task.apply(engine);
+                    };
+        }
+        long submitted = (metrics == null) ? 0 : System.nanoTime();
+        if (pool == null) {
+            return () -> {
+                // sync calls without a timeout run on the calling thread, async ones on the
+                // ExecutorService, they never use the Engine at the same time
+                engineLock.lockInterruptibly();
+                try {
+                    if (metrics != null) {
+                        metrics.queued(System.nanoTime() - submitted);
+                    }
+                    return engineTask.apply(engine);
+                } catch (RuntimeException | Error e) {
+                    // the guest state is unknown, the fuel metering Engine has a baseline
+                    if (engine.isOutOfFuel()) {
+                        engine.reset();
+                    }
+                    throw e;
+                } finally {
+                    engineLock.unlock();
+                }
+            };
+        } else {
+            return () -> {
+                var pooled = pool.checkout();
+                if (metrics != null) {
+                    metrics.queued(System.nanoTime() - submitted);
+                }
+                T result;
+                try {
+                    result = engineTask.apply(pooled);
+                } catch (RuntimeException | Error e) {
+                    if (isRecoverable(e) && !pooled.isOutOfFuel()) {
+                        pool.checkin(pooled);
+                    } else {
+                        pool.discard(pooled);
+                    }
+                    throw e;
+                }
+                pool.checkin(pooled);
+                return result;
+            };
+        }
+    }
+
+    // errors thrown by the script and arguments rejected upfront leave the Engine usable,
+    // an interrupted, timed out or out of fuel execution, a trap or a failing host function
+    // stop it in an unknown state
+    private static boolean isRecoverable(Throwable e) {
+        return (e instanceof GuestException || e instanceof IllegalArgumentException)
+                && !Thread.currentThread().isInterrupted();
+    }
+
+    private static JfrEvents.RunnerTask taskEvent(
+            String operation, String moduleName, String functionName) {
+        var event = new JfrEvents.RunnerTask();
+        event.operation = operation;
+        event.moduleName = moduleName;
+        event.functionName = functionName;
+        event.begin();
+        return event;
+    }
+
+    private static void commitTaskEvent(JfrEvents.RunnerTask event, int timeout, boolean timedOut) {
+        if (event.shouldCommit()) {
+            event.timeout = timeout;
+            event.timedOut = timedOut;
+            event.commit();
+        }
+    }
+
+    private <T> CompletableFuture<T> submitAsync(
+            Function<Engine, T> engineTask,
+            int timeout,
+            String timeoutMessage,
+            JfrEvents.RunnerTask event) {
+        var task = toTask(engineTask);
+        var result = new CompletableFuture<T>();
+        Future<?> fut =
+                es.submit(
+                        () -> {
+                            try {
+                                result.complete(task.call());
+                            } catch (Throwable e) {
+                                result.completeExceptionally(e);
+                            }
+                        });
+        if (timeout != -1) {
+            CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS)
+                    .execute(
+                            () -> {
+                                if (result.completeExceptionally(
+                                        new RuntimeException(
+                                                timeoutMessage, new TimeoutException()))) {
+                                    fut.cancel(true);
+                                }
+                            });
+        }
+        // cancelling the returned future interrupts the execution
+        result.whenComplete(
+                (r, e) -> {
+                    if (result.isCancelled()) {
+                        fut.cancel(true);
+                    }
+                    commitTaskEvent(
+                            event, timeout, e != null && e.getCause() instanceof TimeoutException);
+                });
+        return result;
+    }
+
+    private <T> T submitWithTimeout(
+            Function<Engine, T> engineTask,
+            int timeout,
+            String timeoutMessage,
+            JfrEvents.RunnerTask event) {
+        var task = toTask(engineTask);
         if (timeout == -1) {
             try {
                 return task.call();
@@ -97,12 +399,16 @@ public final class Runner implements AutoCloseable {
                 throw e;
             } catch (Throwable e) {
                 sneakyThrow(e);
+            } finally {
+                commitTaskEvent(event, timeout, false);
             }
         }
         Future<T> fut = es.submit(task);
+        boolean timedOut = false;
         try {
             return fut.get(timeout, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
+            timedOut = true;
             fut.cancel(true);
             throw new RuntimeException(timeoutMessage, e);
         } catch (InterruptedException e) {
@@ -112,6 +418,8 @@ public final class Runner implements AutoCloseable {
                 sneakyThrow(e.getCause());
             }
             throw new RuntimeException(e);
+        } finally {
+            commitTaskEvent(event, timeout, timedOut);
         }
     }
 
@@ -126,8 +434,11 @@ public final class Runner implements AutoCloseable {
 
     public static class Builder {
         private Engine engine;
+        private EnginePool pool;
         private int timeout = -1;
         private int compilationTimeout = -1;
+        private long fuel = -1;
+        private EngineMetrics metrics;
         private ExecutorService es;
 
         public Builder withExecutorService(ExecutorService es) {
@@ -140,6 +451,12 @@ public final class Runner implements AutoCloseable {
             return this;
         }
 
+        // the resulting Runner can be safely invoked by multiple threads concurrently
+        public Builder withEnginePool(EnginePool pool) {
+            this.pool = pool;
+            return this;
+        }
+
         public Builder withTimeoutMs(int timeoutMs) {
             this.timeout = timeoutMs;
             return this;
@@ -150,14 +467,57 @@ public final class Runner implements AutoCloseable {
             return this;
         }
 
+        // bounds each execution to a budget of fuel instead of, or in addition to, a timeout,
+        // without a timeout the executions run on the calling thread,
+        // the engines need to be built with Engine.Builder.withFuelMetering
+        public Builder withFuel(long fuel) {
+            this.fuel = fuel;
+            return this;
+        }
+
+        // also installed on the default Engine, configure the Engines passed to withEngine and
+        // withEnginePool with Engine.Builder.withMetrics
+        public Builder withMetrics(EngineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public Runner build() {
+            if (this.pool != null) {
+                if (this.engine != null) {
+                    throw new IllegalArgumentException(
+                            "A Runner can use either an Engine or an EnginePool, not both");
+                }
+                if (this.es == null) {
+                    this.es = Executors.newCachedThreadPool();
+                }
+                return new Runner(
+                        null,
+                        this.pool,
+                        this.timeout,
+                        this.compilationTimeout,
+                        this.fuel,
+                        this.metrics,
+                        this.es);
+            }
             if (this.engine == null) {
-                this.engine = Engine.builder().build();
+                this.engine =
+                        Engine.builder()
+                                .withFuelMetering(this.fuel >= 0)
+                                .withMetrics(this.metrics)
+                                .build();
             }
             if (this.es == null) {
                 this.es = Executors.newSingleThreadExecutor();
             }
-            return new Runner(this.engine, this.timeout, this.compilationTimeout, this.es);
+            return new Runner(
+                    this.engine,
+                    null,
+                    this.timeout,
+                    this.compilationTimeout,
+                    this.fuel,
+                    this.metrics,
+                    this.es);
         }
     }
 }
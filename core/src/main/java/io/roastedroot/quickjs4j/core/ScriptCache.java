@@ -1,9 +1,35 @@
 package io.roastedroot.quickjs4j.core;
 
+import java.util.function.Supplier;
+
 public interface ScriptCache {
-    boolean exists(byte[] code);
+    // hashes the code, callers compute the key once and reuse it
+    ScriptKey key(byte[] code);
+
+    default boolean exists(byte[] code) {
+        return get(key(code)) != null;
+    }
+
+    byte[] get(ScriptKey key);
+
+    default byte[] get(byte[] code) {
+        return get(key(code));
+    }
+
+    void set(ScriptKey key, byte[] compiled);
 
-    void set(byte[] code, byte[] compiled);
+    default void set(byte[] code, byte[] compiled) {
+        set(key(code), compiled);
+    }
 
-    byte[] get(byte[] code);
+    // a single lookup, on a miss compile runs outside of any lock and its result is stored
+    default byte[] computeIfAbsent(ScriptKey key, Supplier<byte[]> compile) {
+        var cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        var compiled = compile.get();
+        set(key, compiled);
+        return compiled;
+    }
 }
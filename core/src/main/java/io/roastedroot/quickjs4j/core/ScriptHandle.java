@@ -0,0 +1,41 @@
+package io.roastedroot.quickjs4j.core;
+
+// Bytecode kept in the guest memory of an Engine by Engine.load, executed without being copied
+// again, until Engine.release.
+// A reset to a state preceding the load invalidates the handle.
+public final class ScriptHandle {
+    private final Engine engine;
+    private final int codePtr;
+    private final byte[] compiledCode;
+    private boolean live = true;
+
+    ScriptHandle(Engine engine, int codePtr, byte[] compiledCode) {
+        this.engine = engine;
+        this.codePtr = codePtr;
+        this.compiledCode = compiledCode;
+    }
+
+    Engine engine() {
+        return engine;
+    }
+
+    int codePtr() {
+        return codePtr;
+    }
+
+    byte[] compiledCode() {
+        return compiledCode;
+    }
+
+    void invalidate() {
+        live = false;
+    }
+
+    public boolean isLive() {
+        return live;
+    }
+
+    public int size() {
+        return compiledCode.length;
+    }
+}
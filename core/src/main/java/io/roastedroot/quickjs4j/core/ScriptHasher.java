@@ -0,0 +1,40 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Hashes the scripts into the ScriptKeys of a ScriptCache, SHA-256 by default
+@FunctionalInterface
+public interface ScriptHasher {
+    byte[] hash(byte[] code);
+
+    static ScriptHasher sha256() {
+        return messageDigest("SHA-256");
+    }
+
+    static ScriptHasher messageDigest(String algorithm) {
+        try {
+            // fail fast on unknown algorithms
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        // MessageDigest is stateful, one instance per thread
+        var digest =
+                ThreadLocal.withInitial(
+                        () -> {
+                            try {
+                                return MessageDigest.getInstance(algorithm);
+                            } catch (NoSuchAlgorithmException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        return (code) -> digest.get().digest(code);
+    }
+
+    // 128 bit MurmurHash3, several times faster than SHA-256 but not collision resistant,
+    // only for scripts from trusted sources
+    static ScriptHasher murmur3() {
+        return Murmur3::hash128;
+    }
+}
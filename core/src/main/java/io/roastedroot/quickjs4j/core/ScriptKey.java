@@ -0,0 +1,50 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.util.Arrays;
+
+// The hash identifying a script in a ScriptCache, computed once with ScriptCache.key and
+// reused for every lookup of the same script
+public final class ScriptKey {
+    private final byte[] hash;
+    private final int hashCode;
+
+    ScriptKey(byte[] hash) {
+        this.hash = hash;
+        this.hashCode = Arrays.hashCode(hash);
+    }
+
+    public static ScriptKey of(ScriptHasher hasher, byte[] code) {
+        return new ScriptKey(hasher.hash(code));
+    }
+
+    // not copied, not to be modified
+    byte[] bytes() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScriptKey)) {
+            return false;
+        }
+        return Arrays.equals(hash, ((ScriptKey) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder("ScriptKey{");
+        for (var b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,245 @@
+package io.roastedroot.quickjs4j.core;
+
+import java.nio.charset.Charset;
+import run.endive.runtime.Instance;
+import run.endive.runtime.Memory;
+import run.endive.runtime.TrapException;
+import run.endive.wasm.types.DataSegment;
+
+// Wasm memories never shrink, this one can be truncated back to a number of pages while the
+// delegate keeps them allocated, so that growing again only reuses them.
+// The accesses are bounded to the truncated size, the pages beyond the truncation should be
+// zeroed by the caller before they are reused.
+final class TruncatableMemory implements Memory {
+    private final Memory delegate;
+    private int pages;
+
+    TruncatableMemory(Memory delegate) {
+        this.delegate = delegate;
+        this.pages = delegate.pages();
+    }
+
+    void truncate(int pages) {
+        if (pages > this.pages) {
+            throw new IllegalArgumentException(
+                    "Can't truncate " + this.pages + " pages to " + pages + " pages");
+        }
+        this.pages = pages;
+    }
+
+    private void checkBounds(int addr, int len) {
+        long limit = (long) pages * PAGE_SIZE;
+        if (addr < 0 || len < 0 || addr > limit - len) {
+            throw new TrapException(
+                    "out of bounds memory access: attempted to access address: "
+                            + addr
+                            + " but limit is: "
+                            + limit
+                            + " and size: "
+                            + len);
+        }
+    }
+
+    @Override
+    public int pages() {
+        return pages;
+    }
+
+    @Override
+    public int grow(int size) {
+        var prevPages = pages;
+        if (size < 0 || size > maximumPages() - prevPages) {
+            return -1;
+        }
+        var numPages = prevPages + size;
+        var allocated = delegate.pages();
+        if (numPages > allocated && delegate.grow(numPages - allocated) == -1) {
+            return -1;
+        }
+        pages = numPages;
+        return prevPages;
+    }
+
+    @Override
+    public int initialPages() {
+        return delegate.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return delegate.maximumPages();
+    }
+
+    @Override
+    public boolean shared() {
+        return delegate.shared();
+    }
+
+    @Override
+    public Object lock(int address) {
+        return delegate.lock(address);
+    }
+
+    @Override
+    public int waitOn(int address, int expected, long timeout) {
+        return delegate.waitOn(address, expected, timeout);
+    }
+
+    @Override
+    public int waitOn(int address, long expected, long timeout) {
+        return delegate.waitOn(address, expected, timeout);
+    }
+
+    @Override
+    public int notify(int address, int maxThreads) {
+        return delegate.notify(address, maxThreads);
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        delegate.initialize(instance, dataSegments);
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        checkBounds(dest, size);
+        delegate.initPassiveSegment(segmentId, dest, offset, size);
+    }
+
+    @Override
+    public void write(int addr, byte[] data) {
+        checkBounds(addr, data.length);
+        delegate.write(addr, data);
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        checkBounds(addr, size);
+        delegate.write(addr, data, offset, size);
+    }
+
+    @Override
+    public String readString(int addr, int len, Charset charSet) {
+        checkBounds(addr, len);
+        return delegate.readString(addr, len, charSet);
+    }
+
+    @Override
+    public byte read(int addr) {
+        checkBounds(addr, 1);
+        return delegate.read(addr);
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        checkBounds(addr, len);
+        return delegate.readBytes(addr, len);
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        checkBounds(addr, 4);
+        delegate.writeI32(addr, data);
+    }
+
+    @Override
+    public int readInt(int addr) {
+        checkBounds(addr, 4);
+        return delegate.readInt(addr);
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        checkBounds(addr, 8);
+        delegate.writeLong(addr, data);
+    }
+
+    @Override
+    public long readLong(int addr) {
+        checkBounds(addr, 8);
+        return delegate.readLong(addr);
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        checkBounds(addr, 2);
+        delegate.writeShort(addr, data);
+    }
+
+    @Override
+    public short readShort(int addr) {
+        checkBounds(addr, 2);
+        return delegate.readShort(addr);
+    }
+
+    @Override
+    public long readU16(int addr) {
+        checkBounds(addr, 2);
+        return delegate.readU16(addr);
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        checkBounds(addr, 1);
+        delegate.writeByte(addr, data);
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        checkBounds(addr, 4);
+        delegate.writeF32(addr, data);
+    }
+
+    @Override
+    public long readF32(int addr) {
+        checkBounds(addr, 4);
+        return delegate.readF32(addr);
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        checkBounds(addr, 4);
+        return delegate.readFloat(addr);
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        checkBounds(addr, 8);
+        delegate.writeF64(addr, data);
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        checkBounds(addr, 8);
+        return delegate.readDouble(addr);
+    }
+
+    @Override
+    public long readF64(int addr) {
+        checkBounds(addr, 8);
+        return delegate.readF64(addr);
+    }
+
+    @Override
+    public void zero() {
+        delegate.zero();
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        checkBounds(fromIndex, toIndex - fromIndex);
+        delegate.fill(value, fromIndex, toIndex);
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        checkBounds(src, size);
+        checkBounds(dest, size);
+        delegate.copy(dest, src, size);
+    }
+
+    @Override
+    public void drop(int segment) {
+        delegate.drop(segment);
+    }
+}
@@ -0,0 +1,75 @@
+package io.roastedroot.quickjs4j.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import run.endive.runtime.Memory;
+import run.endive.runtime.TrapException;
+import run.endive.wasm.types.MemoryLimits;
+
+public class DirectMemoryTest {
+
+    @Test
+    public void accessesAcrossPages() {
+        var memory = new DirectMemory(new MemoryLimits(1, 4));
+        assertEquals(1, memory.grow(1));
+        assertEquals(2, memory.pages());
+
+        int boundary = Memory.PAGE_SIZE - 3;
+        memory.writeLong(boundary, 0x0102030405060708L);
+        assertEquals(0x0102030405060708L, memory.readLong(boundary));
+        assertEquals(0x05060708, memory.readInt(boundary));
+        assertEquals(0x0708, memory.readShort(boundary));
+        assertEquals(0x01, memory.read(boundary + 7));
+
+        memory.writeF64(boundary + 1, 1.5);
+        assertEquals(1.5, memory.readDouble(boundary + 1));
+
+        var data = new byte[] {1, 2, 3, 4, 5, 6};
+        memory.write(boundary, data);
+        assertArrayEquals(data, memory.readBytes(boundary, data.length));
+
+        assertEquals(-1, memory.grow(3));
+        assertThrows(TrapException.class, () -> memory.readInt(2 * Memory.PAGE_SIZE - 2));
+        assertThrows(TrapException.class, () -> memory.read(-1));
+    }
+
+    @Test
+    public void fillAndCopy() {
+        var memory = new DirectMemory(new MemoryLimits(2, 2));
+        memory.fill((byte) 7, 10, Memory.PAGE_SIZE + 10);
+        assertEquals(0, memory.read(9));
+        assertEquals(7, memory.read(10));
+        assertEquals(7, memory.read(Memory.PAGE_SIZE + 9));
+        assertEquals(0, memory.read(Memory.PAGE_SIZE + 10));
+
+        memory.write(100, new byte[] {1, 2, 3, 4});
+        // overlapping
+        memory.copy(102, 100, 4);
+        assertArrayEquals(new byte[] {1, 2, 1, 2, 3, 4}, memory.readBytes(100, 6));
+        // across pages
+        memory.copy(Memory.PAGE_SIZE - 2, 100, 6);
+        assertArrayEquals(new byte[] {1, 2, 1, 2, 3, 4}, memory.readBytes(Memory.PAGE_SIZE - 2, 6));
+    }
+
+    @Test
+    public void overlappingCopyAcrossPages() {
+        var memory = new DirectMemory(new MemoryLimits(3, 3));
+        int size = Memory.PAGE_SIZE + 100;
+        var data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        memory.write(50, data);
+        // dest after src, copied backwards
+        memory.copy(50 + 7, 50, size);
+        assertArrayEquals(data, memory.readBytes(50 + 7, size));
+
+        memory.write(Memory.PAGE_SIZE - 10, data);
+        // dest before src, copied forwards
+        memory.copy(Memory.PAGE_SIZE - 10 - 3, Memory.PAGE_SIZE - 10, size);
+        assertArrayEquals(data, memory.readBytes(Memory.PAGE_SIZE - 10 - 3, size));
+    }
+}
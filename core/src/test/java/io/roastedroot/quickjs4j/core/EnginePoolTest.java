@@ -0,0 +1,190 @@
+package io.roastedroot.quickjs4j.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+
+public class EnginePoolTest {
+
+    @Test
+    public void checkoutAndCheckin() {
+        try (var pool = EnginePool.builder().withMinSize(2).withMaxSize(3).build()) {
+            assertEquals(2, pool.size());
+            assertEquals(2, pool.idleSize());
+
+            var engine1 = pool.checkout();
+            var engine2 = pool.checkout();
+            var engine3 = pool.checkout();
+            assertNotSame(engine1, engine2);
+            assertEquals(3, pool.size());
+            assertEquals(0, pool.idleSize());
+
+            pool.checkin(engine3);
+            assertSame(engine3, pool.checkout());
+
+            pool.checkin(engine1);
+            pool.checkin(engine2);
+            pool.checkin(engine3);
+            assertEquals(3, pool.idleSize());
+        }
+    }
+
+    @Test
+    public void checkoutTimeout() {
+        try (var pool = EnginePool.builder().withMaxSize(1).withCheckoutTimeoutMs(100).build()) {
+            var engine = pool.checkout();
+
+            var ex = assertThrows(RuntimeException.class, pool::checkout);
+            assertTrue(ex.getCause() instanceof TimeoutException);
+
+            pool.discard(engine);
+            // refilled up to minSize
+            assertEquals(1, pool.size());
+            assertEquals(1, pool.idleSize());
+            pool.checkin(pool.checkout());
+            assertEquals(1, pool.size());
+        }
+    }
+
+    @Test
+    public void rejectForeignEngines() {
+        try (var pool = EnginePool.builder().build();
+                var engine = Engine.builder().build()) {
+            assertThrows(IllegalArgumentException.class, () -> pool.checkin(engine));
+        }
+    }
+
+    @Test
+    public void rejectEnginesNotCheckedOut() {
+        try (var pool = EnginePool.builder().withMaxSize(1).build()) {
+            var engine = pool.checkout();
+            pool.checkin(engine);
+
+            assertThrows(IllegalStateException.class, () -> pool.checkin(engine));
+            assertThrows(IllegalStateException.class, () -> pool.discard(engine));
+            assertEquals(1, pool.idleSize());
+            assertSame(engine, pool.checkout());
+        }
+    }
+
+    @Test
+    public void concurrentInvocations() throws Exception {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(
+                                new GuestFunction(
+                                        "mul",
+                                        List.of(Integer.class, Integer.class),
+                                        Integer.class))
+                        .build();
+        var builtins = Builtins.builder("from_java").addIntIntToInt("add", (x, y) -> x + y).build();
+        var libraryCode = "function mul(x, y) { return from_java.add(x * y, 0); };";
+
+        var pool =
+                EnginePool.builder()
+                        .withEngineFactory(
+                                Engine.builder()
+                                                .addBuiltins(builtins)
+                                                .addInvokables(invokables)
+                                                .withResidentLibraries(true)
+                                        ::build)
+                        .withMinSize(1)
+                        .withMaxSize(4)
+                        .build();
+
+        var es = Executors.newFixedThreadPool(8);
+        try (var runner = Runner.builder().withEnginePool(pool).build()) {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                var x = i;
+                tasks.add(
+                        () ->
+                                (Integer)
+                                        runner.invokeGuestFunction(
+                                                "from_js", "mul", List.of(x, 3), libraryCode));
+            }
+            var results = es.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i * 3, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertTrue(pool.size() <= 4);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void keepEnginesOnGuestErrors() {
+        var pool = EnginePool.builder().withMinSize(1).withMaxSize(1).build();
+        var engine = pool.checkout();
+        pool.checkin(engine);
+        try (var runner = Runner.builder().withEnginePool(pool).build()) {
+            assertThrows(GuestException.class, () -> runner.compileAndExec("throw 'boom';"));
+            assertEquals(1, pool.size());
+            assertSame(engine, pool.checkout());
+            pool.checkin(engine);
+
+            runner.compileAndExec("console.log('recovered');");
+            assertEquals(1, pool.size());
+            assertThrows(UnsupportedOperationException.class, runner::stdout);
+            assertThrows(
+                    UnsupportedOperationException.class, () -> runner.exec((ScriptHandle) null));
+            assertThrows(UnsupportedOperationException.class, () -> runner.release(null));
+            assertThrows(
+                    UnsupportedOperationException.class,
+                    () ->
+                            runner.invokePrecompiledGuestFunction(
+                                    "from_js", "add", List.of(), (ScriptHandle) null));
+        }
+    }
+
+    @Test
+    public void discardOutOfFuelEngines() {
+        var pool =
+                EnginePool.builder()
+                        .withEngineFactory(Engine.builder().withFuelMetering(true)::build)
+                        .withMinSize(1)
+                        .withMaxSize(1)
+                        .build();
+        var engine = pool.checkout();
+        pool.checkin(engine);
+        try (var runner = Runner.builder().withEnginePool(pool).withFuel(1_000_000L).build()) {
+            assertThrows(
+                    OutOfFuelException.class, () -> runner.compileAndExec("while (true) { };"));
+
+            // replaced by a fresh Engine
+            assertEquals(1, pool.size());
+            assertNotSame(engine, pool.checkout());
+        }
+    }
+
+    @Test
+    public void poolTimeout() throws Exception {
+        var pool = EnginePool.builder().withMaxSize(2).build();
+        var runner = Runner.builder().withEnginePool(pool).withTimeoutMs(500).build();
+
+        var ex =
+                assertThrows(
+                        RuntimeException.class, () -> runner.compileAndExec("while (true) { };"));
+        assertTrue(ex.getCause() instanceof TimeoutException);
+
+        // the interrupted engine is not handed out again
+        Future<?> probe =
+                Executors.newSingleThreadExecutor()
+                        .submit(() -> runner.compileAndExec("console.log('ok');"));
+        probe.get(5, TimeUnit.SECONDS);
+
+        runner.close();
+    }
+}
@@ -1,18 +1,24 @@
 package io.roastedroot.quickjs4j.core;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
@@ -890,4 +896,679 @@ public class EngineTest {
 
         engine.close();
     }
+
+    @Test
+    public void residentLibrariesAreEvaluatedOnce() {
+        var loads = new AtomicInteger();
+        var builtins =
+                Builtins.builder("from_java")
+                        .addVoidToVoid("loaded", loads::incrementAndGet)
+                        .build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(), Integer.class))
+                        .build();
+        var libraryCode =
+                "from_java.loaded();\n"
+                        + "let counter = 0;\n"
+                        + "function next() { counter++; return counter; };";
+
+        var engine =
+                Engine.builder()
+                        .addBuiltins(builtins)
+                        .addInvokables(invokables)
+                        .withResidentLibraries(true)
+                        .build();
+
+        assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        assertEquals(2, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        assertEquals(3, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        assertEquals(1, loads.get());
+
+        // a different library for the same module is loaded again
+        var otherLibraryCode = libraryCode.replace("counter++", "counter += 10");
+        assertEquals(
+                10, engine.invokeGuestFunction("from_js", "next", List.of(), otherLibraryCode));
+        assertEquals(
+                20, engine.invokeGuestFunction("from_js", "next", List.of(), otherLibraryCode));
+        assertEquals(2, loads.get());
+
+        engine.close();
+    }
+
+    @Test
+    public void residentPrecompiledLibraries() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(Integer.class), Integer.class))
+                        .build();
+        var libraryCode =
+                "let counter = 0;\nfunction next(step) { counter += step; return counter; };";
+
+        var engine = Engine.builder().addInvokables(invokables).withResidentLibraries(true).build();
+        var compiledCode = engine.compilePortableGuestFunction(libraryCode);
+
+        assertEquals(
+                2,
+                engine.invokePrecompiledGuestFunction("from_js", "next", List.of(2), compiledCode));
+        assertEquals(
+                5,
+                engine.invokePrecompiledGuestFunction("from_js", "next", List.of(3), compiledCode));
+
+        engine.close();
+    }
+
+    @Test
+    public void librariesAreEvaluatedOnEveryInvocationByDefault() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(), Integer.class))
+                        .build();
+        var libraryCode = "let counter = 0;\nfunction next() { counter++; return counter; };";
+
+        var engine = Engine.builder().addInvokables(invokables).build();
+
+        assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+
+        engine.close();
+    }
+
+    @Test
+    public void createEnginesFromSnapshot() {
+        var loads = new AtomicInteger();
+        var builtins =
+                Builtins.builder("from_java")
+                        .addVoidToVoid("loaded", loads::incrementAndGet)
+                        .build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(), Integer.class))
+                        .build();
+        var libraryCode =
+                "from_java.loaded();\n"
+                        + "let counter = 0;\n"
+                        + "function next() { counter++; return counter; };";
+        var builder =
+                Engine.builder()
+                        .addBuiltins(builtins)
+                        .addInvokables(invokables)
+                        .withResidentLibraries(true);
+
+        var engine = builder.build();
+        assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        var snapshot = engine.snapshot();
+        assertEquals(2, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+        engine.close();
+
+        var snapshotBuilder = builder.withSnapshot(snapshot);
+        try (var clone1 = snapshotBuilder.build();
+                var clone2 = snapshotBuilder.build()) {
+            // each clone continues independently from the captured state
+            assertEquals(2, clone1.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            assertEquals(3, clone1.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            assertEquals(2, clone2.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+
+            // plain scripts still work on top of a restored engine
+            var codePtr = clone2.compile("console.log('from ' + 'clone');");
+            clone2.exec(codePtr);
+            clone2.free(codePtr);
+            assertEquals("from clone\n", clone2.stdout());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void snapshotsAreLimitedToTwoGigabytes() {
+        assertEquals(32767 * 65536, EngineSnapshot.sizeInBytes(32767));
+        assertThrows(IllegalStateException.class, () -> EngineSnapshot.sizeInBytes(32768));
+        assertThrows(IllegalStateException.class, () -> EngineSnapshot.sizeInBytes(65536));
+    }
+
+    @Test
+    public void hostFunctionArguments() {
+        var received = new AtomicReference<List<Object>>();
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "collect",
+                                        List.of(String.class, Integer.class, List.class),
+                                        List.class,
+                                        (args) -> {
+                                            received.set(args);
+                                            return args;
+                                        }))
+                        .build();
+
+        try (var engine = Engine.builder().addBuiltins(builtins).build()) {
+            var codePtr =
+                    engine.compile(
+                            "var res = from_java.collect('a\\u00e8', 1, [{ \"b\": [2] }]);\n"
+                                    + "console.log(JSON.stringify(res));\n"
+                                    + "from_java.collect('missing');\n"
+                                    + "from_java.collect('extra', 2, [], 'ignored');");
+            engine.exec(codePtr);
+            engine.free(codePtr);
+
+            assertEquals("[\"a\u00e8\",1,[{\"b\":[2]}]]\n", engine.stdout());
+            assertEquals(List.of("extra", 2, List.of()), received.get());
+        }
+    }
+
+    @Test
+    public void precompiledGuestLibraries() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("add", List.of(Integer.class), Integer.class))
+                        .build();
+        var builtins = Builtins.builder("from_java").addVoidToInt("base", () -> 40).build();
+        var libraryCode = "function add(x) { return from_java.base() + x; };";
+
+        // e.g. at build time, without knowing the Builtins
+        byte[] library;
+        try (var engine = Engine.builder().addInvokables(invokables).build()) {
+            library = PrecompiledLibraries.encode(engine.compilePortableGuestFunction(libraryCode));
+        }
+
+        try (var engine =
+                Engine.builder().addBuiltins(builtins).addInvokables(invokables).build()) {
+            var bytecode = PrecompiledLibraries.decode(library);
+            assertEquals(
+                    42,
+                    engine.invokePrecompiledGuestFunction("from_js", "add", List.of(2), bytecode));
+            assertEquals(
+                    43,
+                    engine.invokePrecompiledGuestFunction("from_js", "add", List.of(3), bytecode));
+        }
+
+        // stale bytecode, from a different version or plugin build
+        var plugin = PersistentScriptCache.PluginDigest.VALUE;
+        assertNull(
+                PrecompiledLibraries.decode(
+                        PrecompiledLibraries.encode(new byte[1], "0.0.1", plugin)));
+        assertNull(
+                PrecompiledLibraries.decode(
+                        PrecompiledLibraries.encode(
+                                new byte[1], Version.version, "rebuilt".getBytes(UTF_8))));
+        assertThrows(
+                IllegalArgumentException.class, () -> PrecompiledLibraries.decode(new byte[4]));
+    }
+
+    @Test
+    public void releaseHostRefs() {
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "create",
+                                        List.of(String.class),
+                                        HostRef.class,
+                                        (args) -> args.get(0)),
+                                new HostFunction(
+                                        "read",
+                                        List.of(HostRef.class),
+                                        String.class,
+                                        (args) -> args.get(0)))
+                        .build();
+
+        try (var engine = Engine.builder().addBuiltins(builtins).build()) {
+            for (int i = 0; i < 10; i++) {
+                var codePtr =
+                        engine.compile(
+                                "var ref = from_java.create('value');\n"
+                                        + "from_java.read(ref);\n"
+                                        + "quickjs4j_engine.release_host_ref(ref);");
+                engine.exec(codePtr);
+                engine.free(codePtr);
+            }
+            assertEquals(0, engine.hostRefCount());
+
+            var javaRef = engine.createHostRef("from java");
+            var codePtr = engine.compile("console.log(from_java.read(" + javaRef.pointer() + "));");
+            engine.exec(codePtr);
+            engine.free(codePtr);
+            assertEquals("from java\n", engine.stdout());
+
+            engine.releaseHostRef(javaRef);
+            assertEquals(0, engine.hostRefCount());
+        }
+    }
+
+    @Test
+    public void scopedHostRefs() {
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "create",
+                                        List.of(String.class),
+                                        HostRef.class,
+                                        (args) -> args.get(0)),
+                                new HostFunction(
+                                        "read",
+                                        List.of(HostRef.class),
+                                        String.class,
+                                        (args) -> args.get(0)))
+                        .build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("read", List.of(HostRef.class), String.class))
+                        .build();
+        var libraryCode = "function read(ref) { return from_java.read(ref); };";
+
+        try (var engine =
+                Engine.builder()
+                        .addBuiltins(builtins)
+                        .addInvokables(invokables)
+                        .withScopedHostRefs(true)
+                        .build()) {
+            var owned = engine.createHostRef("owned");
+            for (int i = 0; i < 10; i++) {
+                assertEquals(
+                        "arg" + i,
+                        engine.invokeGuestFunction(
+                                "from_js", "read", List.of("arg" + i), libraryCode));
+                var codePtr =
+                        engine.compile(
+                                "from_java.read(from_java.create('temporary'));\n"
+                                        + "globalThis.kept = from_java.create('kept');\n"
+                                        + "quickjs4j_engine.retain_host_ref(globalThis.kept);");
+                engine.exec(codePtr);
+                engine.free(codePtr);
+            }
+            // the owned reference and the retained ones
+            assertEquals(11, engine.hostRefCount());
+            assertEquals("owned", owned.reference());
+        }
+    }
+
+    @Test
+    public void metrics() {
+        var compiled = new AtomicInteger();
+        var cacheHits = new AtomicInteger();
+        var executed = new AtomicInteger();
+        var hostCalls = new ArrayList<String>();
+        var guestCalls = new ArrayList<String>();
+        var bytesToGuest = new AtomicInteger();
+        var bytesFromGuest = new AtomicInteger();
+        var memorySize = new AtomicLong();
+        var metrics =
+                new EngineMetrics() {
+                    @Override
+                    public void compiled(long nanos, boolean cacheHit) {
+                        compiled.incrementAndGet();
+                        if (cacheHit) {
+                            cacheHits.incrementAndGet();
+                        }
+                    }
+
+                    @Override
+                    public void executed(long nanos) {
+                        executed.incrementAndGet();
+                    }
+
+                    @Override
+                    public void guestCall(String moduleName, String functionName, long nanos) {
+                        guestCalls.add(moduleName + "." + functionName);
+                    }
+
+                    @Override
+                    public void hostCall(String moduleName, String functionName, long nanos) {
+                        hostCalls.add(moduleName + "." + functionName);
+                    }
+
+                    @Override
+                    public void bytesToGuest(int bytes) {
+                        bytesToGuest.addAndGet(bytes);
+                    }
+
+                    @Override
+                    public void bytesFromGuest(int bytes) {
+                        bytesFromGuest.addAndGet(bytes);
+                    }
+
+                    @Override
+                    public void memorySize(long bytes) {
+                        memorySize.set(bytes);
+                    }
+                };
+        var builtins =
+                Builtins.builder("from_java").addStringToString("echo", (str) -> str).build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("echo", List.of(String.class), String.class))
+                        .build();
+        var libraryCode = "function echo(value) { return from_java.echo(value); };";
+
+        try (var engine =
+                Engine.builder()
+                        .addBuiltins(builtins)
+                        .addInvokables(invokables)
+                        .withMetrics(metrics)
+                        .build()) {
+            for (int i = 0; i < 2; i++) {
+                assertEquals(
+                        "hello",
+                        engine.invokeGuestFunction(
+                                "from_js", "echo", List.of("hello"), libraryCode));
+            }
+
+            // the Builtins prelude, compiled and executed by the Engine initialization
+            assertEquals(3, compiled.get());
+            assertEquals(1, cacheHits.get());
+            assertEquals(3, executed.get());
+            assertEquals(List.of("from_js.echo", "from_js.echo"), guestCalls);
+            assertTrue(hostCalls.contains("from_java.echo"));
+            assertTrue(hostCalls.contains("from_js.echo_set_result"));
+            assertTrue(bytesToGuest.get() > 0);
+            assertTrue(bytesFromGuest.get() > 0);
+            assertTrue(memorySize.get() > 0);
+        }
+    }
+
+    @Test
+    public void invokeGuestFunctionBatch() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(
+                                new GuestFunction(
+                                        "div",
+                                        List.of(Integer.class, Integer.class),
+                                        Integer.class))
+                        .build();
+        var libraryCode =
+                "function div(x, y) {\n"
+                        + "  if (y === 0) { throw new Error('division by zero'); }\n"
+                        + "  return x / y;\n"
+                        + "};";
+
+        for (var resident : List.of(false, true)) {
+            try (var engine =
+                    Engine.builder()
+                            .addInvokables(invokables)
+                            .withResidentLibraries(resident)
+                            .build()) {
+                for (int i = 0; i < 2; i++) {
+                    var results =
+                            engine.invokeGuestFunctionBatch(
+                                    "from_js",
+                                    "div",
+                                    List.of(List.of(10, 2), List.of(1, 0), List.of(9, 3)),
+                                    libraryCode);
+
+                    assertEquals(3, results.size());
+                    assertEquals(5, results.get(0).value());
+                    assertTrue(results.get(1).failed());
+                    assertTrue(results.get(1).error().contains("division by zero"));
+                    assertThrows(GuestException.class, () -> results.get(1).value());
+                    assertEquals(3, results.get(2).value());
+                }
+                assertEquals(
+                        4,
+                        engine.invokeGuestFunction("from_js", "div", List.of(8, 2), libraryCode));
+            }
+        }
+    }
+
+    @Test
+    public void streamedStdout() {
+        var lines = new ArrayList<String>();
+        var stderr = new BoundedOutputStream(16, BoundedOutputStream.Overflow.DROP_OLDEST);
+        try (var engine =
+                Engine.builder()
+                        .withStdout(new LineOutputStream(lines::add))
+                        .withStderr(stderr)
+                        .build()) {
+            var codePtr =
+                    engine.compile(
+                            "for (let i = 0; i < 3; i++) { console.log('line ' + i); }\n"
+                                    + "console.error('x'.repeat(100) + 'tail');");
+            engine.exec(codePtr);
+            engine.free(codePtr);
+
+            assertEquals(List.of("line 0", "line 1", "line 2"), lines);
+            assertThrows(IllegalStateException.class, engine::stdout);
+            assertEquals("xxxxxxxxxxxtail\n", engine.stderr());
+        }
+    }
+
+    @Test
+    public void sharedStdoutIsNotClosed() {
+        var lines = new ArrayList<String>();
+        var closed = new AtomicBoolean();
+        var stdout =
+                new LineOutputStream(lines::add) {
+                    @Override
+                    public synchronized void close() {
+                        closed.set(true);
+                        super.close();
+                    }
+                };
+        for (var name : List.of("first", "second")) {
+            try (var engine = Engine.builder().withStdout(stdout).build()) {
+                var codePtr = engine.compile("console.log('" + name + "');");
+                engine.exec(codePtr);
+                engine.free(codePtr);
+            }
+            assertFalse(closed.get());
+        }
+
+        var bytes = "third\n".getBytes(UTF_8);
+        stdout.write(bytes, 0, bytes.length);
+        assertEquals(List.of("first", "second", "third"), lines);
+    }
+
+    @Test
+    public void directMemory() {
+        var libraryCode = "function concat(a, b) { return a + b.repeat(100000); }";
+        try (var engine =
+                Engine.builder()
+                        .withMemoryFactory(DirectMemory::new)
+                        .addInvokables(
+                                Invokables.builder("from_js")
+                                        .add(
+                                                new GuestFunction(
+                                                        "concat",
+                                                        List.of(String.class, String.class),
+                                                        String.class))
+                                        .build())
+                        .build()) {
+            var result =
+                    (String)
+                            engine.invokeGuestFunction(
+                                    "from_js", "concat", List.of("a", "bc"), libraryCode);
+            assertEquals(200001, result.length());
+            assertTrue(result.startsWith("abcbc"));
+        }
+    }
+
+    @Test
+    public void resetToCheckpoint() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(), Integer.class))
+                        .build();
+        var libraryCode = "let counter = 0;\nfunction next() { counter++; return counter; };";
+        var builder = Engine.builder().addInvokables(invokables).withResidentLibraries(true);
+
+        try (var engine = builder.build()) {
+            assertThrows(IllegalStateException.class, engine::reset);
+
+            assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            engine.checkpoint();
+            assertEquals(2, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            assertEquals(3, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            engine.reset();
+            assertEquals(2, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+
+            // fresh engines restore the post-library-load image after every invocation
+            var snapshot = engine.snapshot();
+            try (var fresh = builder.withSnapshot(snapshot).withFreshInvocations(true).build()) {
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(
+                            3,
+                            fresh.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void freshInvocationsKeepMemoryFlat() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("fill", List.of(Integer.class), Integer.class))
+                        .build();
+        var libraryCode =
+                "globalThis.garbage = globalThis.garbage || [];\n"
+                    + "function fill(n) { garbage.push('x'.repeat(n)); return garbage.length; }";
+        try (var engine =
+                Engine.builder().addInvokables(invokables).withFreshInvocations(true).build()) {
+            engine.invokeGuestFunction("from_js", "fill", List.of(1_000_000), libraryCode);
+            var size = engine.snapshot().memorySize();
+            for (int i = 0; i < 5; i++) {
+                assertEquals(
+                        1,
+                        engine.invokeGuestFunction(
+                                "from_js", "fill", List.of(1_000_000), libraryCode));
+            }
+            assertEquals(size, engine.snapshot().memorySize());
+        }
+    }
+
+    @Test
+    public void streamedArgs() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(
+                                new GuestFunction(
+                                        "describe",
+                                        List.of(Integer.class, String.class, Map.class),
+                                        String.class))
+                        .build();
+        var libraryCode = "function describe(n, s, o) { return n + 1 + \":\" + s + \":\" + o.k; };";
+
+        try (var engine = Engine.builder().addInvokables(invokables).build()) {
+            var result =
+                    engine.invokeGuestFunction(
+                            "from_js",
+                            "describe",
+                            (generator) -> {
+                                generator.writeNumber(41);
+                                generator.writeString("str");
+                                generator.writeObject(Map.of("k", "v"));
+                            },
+                            libraryCode);
+            assertEquals("42:str:v", result);
+        }
+    }
+
+    @Test
+    public void genericTypes() {
+        var pointList = new TypeReference<List<Point>>() {}.getType();
+        var received = new AtomicReference<List<Point>>();
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "receive",
+                                        List.of(pointList),
+                                        Void.class,
+                                        (args) -> {
+                                            received.set((List<Point>) args.get(0));
+                                            return null;
+                                        }))
+                        .build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("points", List.of(Integer.class), pointList))
+                        .build();
+        var libraryCode =
+                "function points(n) {\n"
+                        + "  const result = [];\n"
+                        + "  for (let i = 0; i < n; i++) { result.push({ x: i, y: i * 2 }); }\n"
+                        + "  from_java.receive(result);\n"
+                        + "  return result;\n"
+                        + "};";
+
+        try (var engine =
+                Engine.builder().addBuiltins(builtins).addInvokables(invokables).build()) {
+            var result =
+                    (List<Point>)
+                            engine.invokeGuestFunction(
+                                    "from_js", "points", List.of(3), libraryCode);
+            // decoded straight into Points, not into Maps
+            assertEquals(3, result.size());
+            assertEquals(new Point(2, 4), result.get(2));
+            assertEquals(3, received.get().size());
+            assertEquals(new Point(1, 2), received.get().get(1));
+        }
+    }
+
+    @Test
+    public void builtinsInstalledAtInitialization() {
+        var calls = new AtomicInteger();
+        var builtins =
+                Builtins.builder("from_java").addVoidToVoid("call", calls::incrementAndGet).build();
+        var cache = new BasicScriptCache();
+        var script = "from_java.call();";
+
+        try (var engine = Engine.builder().addBuiltins(builtins).withCache(cache).build()) {
+            for (int i = 0; i < 2; i++) {
+                var codePtr = engine.compile(script);
+                engine.exec(codePtr);
+                engine.free(codePtr);
+            }
+        }
+
+        assertEquals(2, calls.get());
+        // no prelude, the bytecode doesn't depend on the Builtins
+        assertTrue(cache.exists(script.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void loadedScripts() {
+        var calls = new AtomicInteger();
+        var builtins =
+                Builtins.builder("from_java").addVoidToVoid("call", calls::incrementAndGet).build();
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("twice", List.of(Integer.class), Integer.class))
+                        .build();
+
+        try (var engine =
+                Engine.builder().addBuiltins(builtins).addInvokables(invokables).build()) {
+            var codePtr = engine.compile("from_java.call();");
+            var script = engine.load(engine.readCompiled(codePtr));
+            engine.free(codePtr);
+            var library =
+                    engine.load(
+                            engine.compilePortableGuestFunction(
+                                    "function twice(x) { return x * 2; };"));
+
+            for (int i = 0; i < 3; i++) {
+                engine.exec(script);
+                assertEquals(
+                        2 * i,
+                        engine.invokePrecompiledGuestFunction(
+                                "from_js", "twice", List.of(i), library));
+            }
+            assertEquals(3, calls.get());
+
+            engine.release(script);
+            assertFalse(script.isLive());
+            assertThrows(IllegalStateException.class, () -> engine.exec(script));
+
+            // loaded after the checkpoint, discarded by the reset
+            engine.checkpoint();
+            var discarded = engine.load(library.compiledCode());
+            engine.reset();
+            assertFalse(discarded.isLive());
+            assertTrue(library.isLive());
+            assertEquals(
+                    8,
+                    engine.invokePrecompiledGuestFunction("from_js", "twice", List.of(4), library));
+        }
+    }
 }
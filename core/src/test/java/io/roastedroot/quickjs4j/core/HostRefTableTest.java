@@ -0,0 +1,77 @@
+package io.roastedroot.quickjs4j.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class HostRefTableTest {
+
+    @Test
+    public void reuseReleasedSlots() {
+        var table = new HostRefTable(false, false);
+        var a = table.add("a");
+        var b = table.add("b");
+        var nil = table.add(null);
+        assertEquals(3, table.size());
+        assertNull(table.get(nil));
+
+        table.release(a);
+        assertThrows(IllegalArgumentException.class, () -> table.get(a));
+        assertThrows(IllegalArgumentException.class, () -> table.release(a));
+        assertThrows(IllegalArgumentException.class, () -> table.get(42));
+
+        assertEquals(a, table.add("c"));
+        assertEquals("c", table.get(a));
+        assertEquals("b", table.get(b));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void releaseScopedHandles() {
+        var table = new HostRefTable(false, true);
+        var owned = table.addUnscoped("owned");
+
+        table.enterScope();
+        var temporary = table.add("temporary");
+        var retained = table.add("retained");
+        table.retain(retained);
+        // nested scopes are released with the outermost
+        table.enterScope();
+        var nested = table.add("nested");
+        table.exitScope();
+        assertEquals("nested", table.get(nested));
+
+        // released and reused by a Java owned handle in the meantime
+        var reused = table.add("reused");
+        table.release(reused);
+        assertEquals(reused, table.addUnscoped("java"));
+        table.exitScope();
+
+        assertEquals(3, table.size());
+        assertEquals("owned", table.get(owned));
+        assertEquals("retained", table.get(retained));
+        assertEquals("java", table.get(reused));
+        assertThrows(IllegalArgumentException.class, () -> table.get(temporary));
+        assertThrows(IllegalArgumentException.class, () -> table.get(nested));
+    }
+
+    @Test
+    public void weakHandles() {
+        var table = new HostRefTable(true, false);
+        var ref = new Object();
+        var handle = table.add(ref);
+        assertEquals(ref, table.get(handle));
+
+        var collected = table.add(new Object());
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                table.get(collected);
+            } catch (IllegalStateException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+public class LruScriptCacheTest {
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(UTF_8);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedEntries() {
+        try (var cache = new LruScriptCache(2)) {
+            cache.set(bytes("a"), bytes("A"));
+            cache.set(bytes("b"), bytes("B"));
+            // a is now the most recently used
+            assertArrayEquals(bytes("A"), cache.get(bytes("a")));
+
+            cache.set(bytes("c"), bytes("C"));
+
+            assertEquals(2, cache.size());
+            assertTrue(cache.exists(bytes("a")));
+            assertFalse(cache.exists(bytes("b")));
+            assertNull(cache.get(bytes("b")));
+            assertTrue(cache.exists(bytes("c")));
+        }
+    }
+
+    @Test
+    public void boundedByBytes() {
+        try (var cache = new LruScriptCache(100, 10)) {
+            cache.set(bytes("a"), new byte[4]);
+            cache.set(bytes("b"), new byte[4]);
+            assertEquals(8, cache.bytes());
+
+            cache.set(bytes("c"), new byte[4]);
+            assertEquals(2, cache.size());
+            assertEquals(8, cache.bytes());
+            assertFalse(cache.exists(bytes("a")));
+
+            // replacing an entry accounts only for the new value
+            cache.set(bytes("c"), new byte[2]);
+            assertEquals(6, cache.bytes());
+
+            // a single oversized entry is still retained
+            cache.set(bytes("d"), new byte[20]);
+            assertEquals(1, cache.size());
+            assertEquals(20, cache.bytes());
+        }
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        var es = Executors.newFixedThreadPool(8);
+        try (var cache = new LruScriptCache(50)) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                tasks.add(
+                        () -> {
+                            for (int i = 0; i < 1000; i++) {
+                                var code = bytes("code" + (i % 100));
+                                var compiled = cache.get(code);
+                                if (compiled == null) {
+                                    cache.set(code, bytes("compiled" + (i % 100)));
+                                } else {
+                                    assertArrayEquals(bytes("compiled" + (i % 100)), compiled);
+                                }
+                            }
+                            return null;
+                        });
+            }
+            for (var result : es.invokeAll(tasks)) {
+                result.get();
+            }
+            assertEquals(50, cache.size());
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void usedByTheEngine() {
+        try (var cache = new LruScriptCache(1);
+                var engine = Engine.builder().withCache(cache).build()) {
+            var codePtr = engine.compile("console.log('cached');");
+            engine.free(codePtr);
+            codePtr = engine.compile("console.log('cached');");
+            engine.exec(codePtr);
+            engine.free(codePtr);
+
+            assertEquals(1, cache.size());
+            assertEquals("cached\n", engine.stdout());
+        }
+    }
+
+    @Test
+    public void computeIfAbsentCompilesOnce() {
+        try (var cache = new LruScriptCache(2)) {
+            var key = cache.key(bytes("a"));
+            var compilations = new int[1];
+
+            var compiled =
+                    cache.computeIfAbsent(
+                            key,
+                            () -> {
+                                compilations[0]++;
+                                return bytes("A");
+                            });
+            assertArrayEquals(bytes("A"), compiled);
+            compiled =
+                    cache.computeIfAbsent(
+                            cache.key(bytes("a")),
+                            () -> {
+                                compilations[0]++;
+                                return bytes("B");
+                            });
+
+            assertArrayEquals(bytes("A"), compiled);
+            assertEquals(1, compilations[0]);
+            assertArrayEquals(bytes("A"), cache.get(bytes("a")));
+        }
+    }
+
+    @Test
+    public void murmur3Keys() {
+        // the reference MurmurHash3_x64_128 output, seed 0
+        assertEquals(
+                "ScriptKey{6c1b07bc7bbc4be347939ac4a93c437a}",
+                ScriptKey.of(
+                                ScriptHasher.murmur3(),
+                                bytes("The quick brown fox jumps over the lazy dog"))
+                        .toString());
+
+        try (var cache = new LruScriptCache(2, Long.MAX_VALUE, ScriptHasher.murmur3())) {
+            cache.set(bytes("a"), bytes("A"));
+
+            assertEquals(cache.key(bytes("a")), cache.key(bytes("a")));
+            assertArrayEquals(bytes("A"), cache.get(cache.key(bytes("a"))));
+            assertNull(cache.get(bytes("b")));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class OutputStreamsTest {
+
+    @Test
+    public void boundedDropOldest() {
+        var out = new BoundedOutputStream(8, BoundedOutputStream.Overflow.DROP_OLDEST);
+        out.write("abcde".getBytes(UTF_8), 0, 5);
+        assertEquals("abcde", out.toString(UTF_8));
+
+        out.write("fghij".getBytes(UTF_8), 0, 5);
+        out.write('k');
+        assertEquals("defghijk", out.toString(UTF_8));
+        assertEquals(3, out.dropped());
+
+        out.write("0123456789".getBytes(UTF_8), 0, 10);
+        assertEquals("23456789", out.toString(UTF_8));
+        assertEquals(8, out.size());
+        assertEquals(13, out.dropped());
+    }
+
+    @Test
+    public void boundedTruncate() {
+        var out = new BoundedOutputStream(8, BoundedOutputStream.Overflow.TRUNCATE);
+        out.write("abcde".getBytes(UTF_8), 0, 5);
+        out.write("fghij".getBytes(UTF_8), 0, 5);
+        out.write('k');
+        assertEquals("abcdefgh", out.toString(UTF_8));
+        assertEquals(3, out.dropped());
+
+        out.reset();
+        out.write('z');
+        assertEquals("z", out.toString(UTF_8));
+    }
+
+    @Test
+    public void lines() {
+        var lines = new ArrayList<String>();
+        var out = new LineOutputStream(lines::add, 4);
+        var bytes = "one\r\ntwo\nthree\nfo".getBytes(UTF_8);
+        out.write(bytes, 0, bytes.length);
+        assertEquals(List.of("one", "two", "thre", "e"), lines);
+
+        out.write('o');
+        out.close();
+        assertEquals(List.of("one", "two", "thre", "e", "foo"), lines);
+    }
+
+    @Test
+    public void linesAreSplitAtCodePoints() {
+        var lines = new ArrayList<String>();
+        var out = new LineOutputStream(lines::add, 4);
+        // 2, 3 and 4 bytes code points
+        var bytes = "aé€😀b\n".getBytes(UTF_8);
+        for (var b : bytes) {
+            out.write(b);
+        }
+        out.write(bytes, 0, bytes.length);
+        assertEquals(List.of("aé", "€", "😀", "b", "aé", "€", "😀", "b"), lines);
+
+        // a code point longer than the line is not split
+        lines.clear();
+        out = new LineOutputStream(lines::add, 1);
+        bytes = "é€\n".getBytes(UTF_8);
+        out.write(bytes, 0, bytes.length);
+        assertEquals(List.of("é", "€"), lines);
+    }
+}
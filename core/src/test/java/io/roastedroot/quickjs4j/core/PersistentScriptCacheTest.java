@@ -0,0 +1,138 @@
+package io.roastedroot.quickjs4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PersistentScriptCacheTest {
+    private static final byte[] PLUGIN = PersistentScriptCache.PluginDigest.VALUE;
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(UTF_8);
+    }
+
+    @Test
+    public void survivesRestarts(@TempDir Path dir) {
+        try (var cache = new PersistentScriptCache(dir)) {
+            assertNull(cache.get(bytes("a")));
+            cache.set(bytes("a"), bytes("A"));
+            cache.set(bytes("b"), bytes("B"));
+            // readable right after the write
+            assertArrayEquals(bytes("A"), cache.get(bytes("a")));
+        }
+
+        try (var cache = new PersistentScriptCache(dir)) {
+            assertEquals(2, cache.size());
+            assertTrue(cache.exists(bytes("b")));
+            assertArrayEquals(bytes("A"), cache.get(bytes("a")));
+            assertArrayEquals(bytes("B"), cache.get(bytes("b")));
+        }
+    }
+
+    @Test
+    public void bytecodeIsBoundToTheVersion(@TempDir Path dir) throws Exception {
+        try (var cache = new PersistentScriptCache(dir, "1.0.0", PLUGIN, ScriptHasher.sha256())) {
+            cache.set(bytes("a"), bytes("A"));
+        }
+        // simulate an upgrade that reuses the same file
+        Files.move(dir.resolve("quickjs4j-1.0.0.cache"), dir.resolve("quickjs4j-2.0.0.cache"));
+
+        try (var cache = new PersistentScriptCache(dir, "2.0.0", PLUGIN, ScriptHasher.sha256())) {
+            assertEquals(0, cache.size());
+            assertFalse(cache.exists(bytes("a")));
+        }
+    }
+
+    @Test
+    public void bytecodeIsBoundToThePlugin(@TempDir Path dir) throws Exception {
+        try (var cache = new PersistentScriptCache(dir, "1.0.0", PLUGIN, ScriptHasher.sha256())) {
+            cache.set(bytes("a"), bytes("A"));
+        }
+        // a rebuilt plugin with an unchanged version, e.g. a SNAPSHOT
+        var rebuilt = bytes("rebuilt");
+        try (var cache = new PersistentScriptCache(dir, "1.0.0", rebuilt, ScriptHasher.sha256())) {
+            assertEquals(0, cache.size());
+            assertFalse(cache.exists(bytes("a")));
+        }
+    }
+
+    @Test
+    public void readersSeeAppendedEntries(@TempDir Path dir) {
+        try (var writer = new PersistentScriptCache(dir);
+                var reader = new PersistentScriptCache(dir)) {
+            writer.set(bytes("a"), bytes("A"));
+            assertTrue(reader.exists(bytes("a")));
+            writer.set(bytes("b"), bytes("B"));
+            assertArrayEquals(bytes("B"), reader.get(bytes("b")));
+            // readers don't write
+            reader.set(bytes("c"), bytes("C"));
+            assertNull(writer.get(bytes("c")));
+        }
+    }
+
+    @Test
+    public void replacedFilesStayReadable(@TempDir Path dir) {
+        var writer = new PersistentScriptCache(dir, "1.0.0", PLUGIN, ScriptHasher.sha256());
+        writer.set(bytes("a"), bytes("A"));
+        try (var reader = new PersistentScriptCache(dir, "1.0.0", PLUGIN, ScriptHasher.sha256())) {
+            writer.close();
+            // a rebuilt plugin replaces the file the reader has mapped
+            var rebuilt = bytes("rebuilt");
+            try (var replacing =
+                    new PersistentScriptCache(dir, "1.0.0", rebuilt, ScriptHasher.sha256())) {
+                assertEquals(0, replacing.size());
+                replacing.set(bytes("b"), bytes("B"));
+            }
+            assertArrayEquals(bytes("A"), reader.get(bytes("a")));
+        }
+    }
+
+    @Test
+    public void ignoreTruncatedRecords(@TempDir Path dir) throws Exception {
+        Path file;
+        try (var cache = new PersistentScriptCache(dir)) {
+            cache.set(bytes("a"), bytes("A"));
+            file = cache.file();
+        }
+        // a partial record, as left by a process killed in the middle of a write
+        Files.write(file, new byte[] {0, 0, 0, 32, 0}, StandardOpenOption.APPEND);
+
+        try (var cache = new PersistentScriptCache(dir)) {
+            assertEquals(1, cache.size());
+            cache.set(bytes("b"), bytes("B"));
+        }
+        try (var cache = new PersistentScriptCache(dir)) {
+            assertArrayEquals(bytes("A"), cache.get(bytes("a")));
+            assertArrayEquals(bytes("B"), cache.get(bytes("b")));
+        }
+    }
+
+    @Test
+    public void skipCompilationOnWarmRestarts(@TempDir Path dir) {
+        try (var cache = new PersistentScriptCache(dir);
+                var engine = Engine.builder().withCache(cache).build()) {
+            engine.free(engine.compile("console.log('persisted');"));
+            // and the Builtins prelude
+            assertEquals(2, cache.size());
+        }
+
+        try (var cache = new PersistentScriptCache(dir);
+                var engine = Engine.builder().withCache(cache).build()) {
+            var codePtr = engine.compile("console.log('persisted');");
+            engine.exec(codePtr);
+            engine.free(codePtr);
+
+            assertEquals(2, cache.size());
+            assertEquals("persisted\n", engine.stdout());
+        }
+    }
+}
@@ -5,10 +5,19 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.file.Files;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
 public class RunnerTest {
@@ -376,6 +385,316 @@ public class RunnerTest {
         runner.close();
     }
 
+    @Test
+    public void invokeGuestFunctionAsync() throws Exception {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(
+                                new GuestFunction(
+                                        "add",
+                                        List.of(Integer.class, Integer.class),
+                                        Integer.class))
+                        .build();
+
+        var libraryCode = "function add(x, y) { return x + y; };";
+
+        var jsEngine = Engine.builder().addInvokables(invokables).build();
+        try (var runner = Runner.builder().withEngine(jsEngine).withTimeoutMs(5000).build()) {
+            var first =
+                    runner.invokeGuestFunctionAsync("from_js", "add", List.of(1, 2), libraryCode);
+            var second =
+                    runner.invokeGuestFunctionAsync("from_js", "add", List.of(40, 2), libraryCode);
+
+            assertEquals(3, first.get(5, TimeUnit.SECONDS));
+            assertEquals(42, second.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void syncAndAsyncDontOverlap() throws Exception {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("run", List.of(), Integer.class))
+                        .build();
+        var active = new AtomicInteger();
+        var overlapped = new AtomicBoolean();
+        var entered = new CountDownLatch(1);
+        var overlapping = new CountDownLatch(1);
+        var builtins =
+                Builtins.builder("from_java")
+                        .addVoidToVoid(
+                                "mark",
+                                () -> {
+                                    if (active.incrementAndGet() > 1) {
+                                        overlapped.set(true);
+                                        overlapping.countDown();
+                                    }
+                                    entered.countDown();
+                                    try {
+                                        // gives the other call the time to enter the guest
+                                        overlapping.await(500, TimeUnit.MILLISECONDS);
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                    }
+                                    active.decrementAndGet();
+                                })
+                        .build();
+
+        var libraryCode = "function run() { from_java.mark(); return 1; };";
+
+        var jsEngine = Engine.builder().addBuiltins(builtins).addInvokables(invokables).build();
+        // no timeout, the sync call runs on the calling thread
+        try (var runner = Runner.builder().withEngine(jsEngine).build()) {
+            var async = runner.invokeGuestFunctionAsync("from_js", "run", List.of(), libraryCode);
+            // the async invocation is inside the guest before the sync one is issued
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            assertEquals(1, runner.invokeGuestFunction("from_js", "run", List.of(), libraryCode));
+            assertEquals(1, async.get(5, TimeUnit.SECONDS));
+
+            assertFalse(overlapped.get());
+        }
+    }
+
+    @Test
+    public void invokeGuestFunctionAsyncTimeout() throws Exception {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("hang", List.of(), Integer.class))
+                        .build();
+
+        var libraryCode = "function hang() { while(true) {} return 1; };";
+
+        var es = Executors.newSingleThreadExecutor();
+        var jsEngine = Engine.builder().addInvokables(invokables).build();
+        try (var runner =
+                Runner.builder()
+                        .withEngine(jsEngine)
+                        .withTimeoutMs(500)
+                        .withExecutorService(es)
+                        .build()) {
+            // the caller is not blocked while the guest function is running
+            var result = runner.invokeGuestFunctionAsync("from_js", "hang", List.of(), libraryCode);
+            assertFalse(result.isDone());
+
+            var ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause().getCause() instanceof TimeoutException);
+            assertTrue(
+                    ex.getCause().getMessage().contains("Timeout while invoking guest function"),
+                    "Expected execution timeout, got: " + ex.getCause().getMessage());
+
+            // the execution has been interrupted and the executor thread is free
+            var probe = es.submit(() -> "ok");
+            assertEquals("ok", probe.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static long fuelConsumed(int n) {
+        return fuelConsumed(n, false);
+    }
+
+    private static long fuelConsumed(int n, boolean freshInvocations) {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("loop", List.of(Integer.class), Integer.class))
+                        .build();
+
+        var libraryCode =
+                "function loop(n) { var sum = 0; for (var i = 0; i < n; i++) { sum += i; } return"
+                        + " sum; };";
+
+        var jsEngine =
+                Engine.builder()
+                        .addInvokables(invokables)
+                        .withFuelMetering(true)
+                        .withFreshInvocations(freshInvocations)
+                        .build();
+        try (var runner = Runner.builder().withEngine(jsEngine).withFuel(10_000_000L).build()) {
+            assertEquals(
+                    n * (n - 1) / 2,
+                    runner.invokeGuestFunction("from_js", "loop", List.of(n), libraryCode));
+            return runner.fuelConsumed();
+        }
+    }
+
+    @Test
+    public void withFuel() {
+        var consumed = fuelConsumed(10);
+        assertTrue(consumed > 0);
+
+        // the same execution from the same state consumes the same fuel
+        assertEquals(consumed, fuelConsumed(10));
+        assertTrue(fuelConsumed(1000) > consumed);
+    }
+
+    @Test
+    public void hostAccessesAreNotMetered() {
+        // the reset after a fresh invocation rewrites the guest memory from the host
+        assertEquals(fuelConsumed(10), fuelConsumed(10, true));
+    }
+
+    @Test
+    public void fuelStopsExecution() {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("hang", List.of(), Integer.class))
+                        .add(new GuestFunction("one", List.of(), Integer.class))
+                        .build();
+
+        var libraryCode =
+                "function hang() { while(true) {} return 1; }; function one() { return 1; };";
+
+        var jsEngine = Engine.builder().addInvokables(invokables).withFuelMetering(true).build();
+        // no timeout, bounded only by the fuel
+        try (var runner = Runner.builder().withEngine(jsEngine).withFuel(1_000_000L).build()) {
+            var ex =
+                    assertThrows(
+                            OutOfFuelException.class,
+                            () ->
+                                    runner.invokeGuestFunction(
+                                            "from_js", "hang", List.of(), libraryCode));
+            assertTrue(ex.getMessage().contains("exhausted"));
+            assertEquals(1_000_001L, runner.fuelConsumed());
+
+            // the Engine has been reset, the next execution starts from a consistent state
+            assertEquals(1, runner.invokeGuestFunction("from_js", "one", List.of(), libraryCode));
+        }
+    }
+
+    @Test
+    public void fuelRequiresMetering() {
+        try (var runner =
+                Runner.builder().withEngine(Engine.builder().build()).withFuel(1000L).build()) {
+            assertThrows(IllegalStateException.class, () -> runner.compileAndExec("1 + 1;"));
+        }
+    }
+
+    @Test
+    public void withMetrics() {
+        var queued = new AtomicInteger();
+        var executed = new AtomicInteger();
+        var metrics =
+                new EngineMetrics() {
+                    @Override
+                    public void queued(long nanos) {
+                        queued.incrementAndGet();
+                    }
+
+                    @Override
+                    public void executed(long nanos) {
+                        executed.incrementAndGet();
+                    }
+                };
+
+        try (var runner = Runner.builder().withMetrics(metrics).withTimeoutMs(5000).build()) {
+            runner.compileAndExec("console.log('hello');");
+        }
+
+        // compile and exec, and the Builtins prelude executed by the Engine initialization
+        assertEquals(2, queued.get());
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    public void flightRecorderEvents() throws Exception {
+        var builtins =
+                Builtins.builder("from_java")
+                        .add(
+                                new HostFunction(
+                                        "twice",
+                                        List.of(Integer.class),
+                                        Integer.class,
+                                        (args) -> (Integer) args.get(0) * 2))
+                        .build();
+        var jsEngine = Engine.builder().addBuiltins(builtins).build();
+
+        var file = Files.createTempFile("quickjs4j", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("io.roastedroot.quickjs4j.Compile");
+            recording.enable("io.roastedroot.quickjs4j.Exec");
+            recording.enable("io.roastedroot.quickjs4j.HostCall");
+            recording.enable("io.roastedroot.quickjs4j.RunnerTask");
+            recording.start();
+            try (var runner = Runner.builder().withEngine(jsEngine).build()) {
+                runner.compileAndExec("from_java.twice(21);");
+            }
+            recording.stop();
+            recording.dump(file);
+
+            var events = RecordingFile.readAllEvents(file);
+            var names =
+                    events.stream()
+                            .map(e -> e.getEventType().getName())
+                            .collect(Collectors.toSet());
+            assertTrue(names.contains("io.roastedroot.quickjs4j.Compile"));
+            assertTrue(names.contains("io.roastedroot.quickjs4j.Exec"));
+            assertTrue(names.contains("io.roastedroot.quickjs4j.RunnerTask"));
+            assertEquals(
+                    digestOf(events, "io.roastedroot.quickjs4j.Compile"),
+                    digestOf(events, "io.roastedroot.quickjs4j.Exec"));
+
+            var hostCall =
+                    events.stream()
+                            .filter(
+                                    e ->
+                                            e.getEventType()
+                                                    .getName()
+                                                    .equals("io.roastedroot.quickjs4j.HostCall"))
+                            .findFirst()
+                            .orElseThrow();
+            assertEquals("from_java", hostCall.getString("moduleName"));
+            assertEquals("twice", hostCall.getString("functionName"));
+            assertEquals(2, hostCall.getInt("resultSize"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void residentExecutionsReportTheLibraryDigest() throws Exception {
+        var invokables =
+                Invokables.builder("from_js")
+                        .add(new GuestFunction("next", List.of(), Integer.class))
+                        .build();
+        var libraryCode = "let counter = 0;\nfunction next() { counter++; return counter; };";
+        var engine = Engine.builder().addInvokables(invokables).withResidentLibraries(true).build();
+
+        var file = Files.createTempFile("quickjs4j", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("io.roastedroot.quickjs4j.Compile");
+            recording.enable("io.roastedroot.quickjs4j.Exec");
+            recording.start();
+            assertEquals(1, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            assertEquals(2, engine.invokeGuestFunction("from_js", "next", List.of(), libraryCode));
+            recording.stop();
+            recording.dump(file);
+
+            // the library is compiled first, the dispatcher is executed on its behalf
+            var events = RecordingFile.readAllEvents(file);
+            var libraryDigest = digestOf(events, "io.roastedroot.quickjs4j.Compile");
+            var execDigests =
+                    events.stream()
+                            .filter(
+                                    e ->
+                                            e.getEventType()
+                                                    .getName()
+                                                    .equals("io.roastedroot.quickjs4j.Exec"))
+                            .map(e -> e.getString("scriptDigest"))
+                            .collect(Collectors.toList());
+            assertEquals(List.of(libraryDigest, libraryDigest), execDigests);
+        } finally {
+            engine.close();
+            Files.delete(file);
+        }
+    }
+
+    private static String digestOf(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow()
+                .getString("scriptDigest");
+    }
+
     @Test
     public void handleExceptionsThrownInJava() {
         var builtins =
@@ -445,4 +764,23 @@ public class RunnerTest {
 
         runner.close();
     }
+
+    @Test
+    public void loadedScript() {
+        var calls = new AtomicInteger();
+        var builtins =
+                Builtins.builder("from_java").addVoidToVoid("call", calls::incrementAndGet).build();
+        try (var runner =
+                Runner.builder()
+                        .withEngine(Engine.builder().addBuiltins(builtins).build())
+                        .build()) {
+            var script = runner.load(runner.compile("from_java.call();"));
+            runner.exec(script);
+            runner.exec(script);
+            runner.release(script);
+
+            assertEquals(2, calls.get());
+            assertThrows(IllegalStateException.class, () -> runner.exec(script));
+        }
+    }
 }
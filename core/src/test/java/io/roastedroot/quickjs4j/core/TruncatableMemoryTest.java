@@ -0,0 +1,31 @@
+package io.roastedroot.quickjs4j.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import run.endive.runtime.Memory;
+import run.endive.runtime.TrapException;
+import run.endive.wasm.types.MemoryLimits;
+
+public class TruncatableMemoryTest {
+
+    @Test
+    public void accessesAreBoundedToTheTruncatedPages() {
+        var memory = new TruncatableMemory(new DirectMemory(new MemoryLimits(1, 4)));
+        assertEquals(1, memory.grow(1));
+        memory.writeI32(Memory.PAGE_SIZE + 4, 42);
+
+        memory.truncate(1);
+        assertEquals(1, memory.pages());
+        assertThrows(TrapException.class, () -> memory.readInt(Memory.PAGE_SIZE + 4));
+        assertThrows(TrapException.class, () -> memory.readLong(Memory.PAGE_SIZE - 4));
+        assertThrows(TrapException.class, () -> memory.write(Memory.PAGE_SIZE, new byte[1]));
+        assertThrows(TrapException.class, () -> memory.copy(0, Memory.PAGE_SIZE - 2, 4));
+        assertThrows(TrapException.class, () -> memory.fill((byte) 0, 0, Memory.PAGE_SIZE + 1));
+
+        // growing again reuses the allocated page
+        assertEquals(1, memory.grow(1));
+        assertEquals(42, memory.readInt(Memory.PAGE_SIZE + 4));
+    }
+}
@@ -12,6 +12,7 @@ import io.roastedroot.quickjs4j.annotations.Invokables;
 import io.roastedroot.quickjs4j.annotations.ReturnsHostRef;
 import io.roastedroot.quickjs4j.core.Engine;
 import io.roastedroot.quickjs4j.core.Runner;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 
 class HelloJsTest {
@@ -22,6 +23,18 @@ class HelloJsTest {
         int sub(int x, int y);
     }
 
+    @Invokables(value = "precompiled_js", library = "precompiled/sub.js")
+    interface PrecompiledJsApi {
+        @GuestFunction
+        int sub(int x, int y);
+    }
+
+    @Invokables("async_js")
+    interface AsyncJsApi {
+        @GuestFunction
+        CompletableFuture<Integer> sub(int x, int y);
+    }
+
     private String JS_LIBRARY_CODE = "function sub(x, y) { return x - y; }";
 
     @Builtins("from_java")
@@ -150,4 +163,40 @@ class HelloJsTest {
         // assert
         assertEquals(3, result);
     }
+
+    @Test
+    public void usePrecompiledInvokables() {
+        var javaApi = new JavaApi();
+        var engine =
+                Engine.builder()
+                        .addBuiltins(JavaApi_Builtins.toBuiltins(javaApi))
+                        .addInvokables(PrecompiledJsApi_Invokables.toInvokables())
+                        .build();
+
+        try (var runner = Runner.builder().withEngine(engine).build()) {
+            var jsApi = PrecompiledJsApi_Invokables.create(runner);
+
+            assertEquals(38, jsApi.sub(40, 2));
+            assertTrue(javaApi.invoked);
+        }
+    }
+
+    @Test
+    public void useAsyncInvokables() throws Exception {
+        var engine =
+                Engine.builder()
+                        .addBuiltins(JavaApi_Builtins.toBuiltins(new JavaApi()))
+                        .addInvokables(AsyncJsApi_Invokables.toInvokables())
+                        .build();
+
+        try (var runner = Runner.builder().withEngine(engine).withTimeoutMs(5000).build()) {
+            var jsApi = AsyncJsApi_Invokables.create(JS_LIBRARY_CODE, runner);
+
+            var first = jsApi.sub(5, 2);
+            var second = jsApi.sub(10, 3);
+
+            assertEquals(3, first.get());
+            assertEquals(7, second.get());
+        }
+    }
 }
@@ -0,0 +1,4 @@
+function sub(x, y) {
+  from_java.my_java_check(from_java.my_java_func(x, y));
+  return x - y;
+}
@@ -24,6 +24,21 @@ class ScriptInterfaceGenericsTest {
         }
     }
 
+    /**
+     * A point, decoded by Jackson.
+     */
+    public static class Point {
+        public int x;
+        public int y;
+
+        public Point() {}
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
     /**
      * Script interface demonstrating generic type handling with List&lt;String&gt;.
      */
@@ -62,6 +77,15 @@ class ScriptInterfaceGenericsTest {
          * @return a list of generated strings
          */
         List<String> generateStrings(int count);
+
+        /**
+         * Translates the points horizontally.
+         *
+         * @param points the points to translate
+         * @param dx the horizontal offset
+         * @return the translated points
+         */
+        List<Point> translate(List<Point> points, int dx);
     }
 
     @Test
@@ -154,4 +178,28 @@ class ScriptInterfaceGenericsTest {
 
         processor.close();
     }
+
+    @Test
+    public void testListOfPojos() throws Exception {
+        // Arrange
+        var jsLibrary =
+                new String(
+                        ScriptInterfaceGenericsTest.class
+                                .getResourceAsStream("/ts/dist/out.js")
+                                .readAllBytes(),
+                        StandardCharsets.UTF_8);
+        var processor = new StringListProcessor_Proxy(jsLibrary, new StringListContext());
+
+        // Act
+        var translated = processor.translate(List.of(new Point(1, 2), new Point(3, 4)), 10);
+
+        // Assert, the elements are decoded as Points, not as Maps
+        assertEquals(2, translated.size());
+        Point first = translated.get(0);
+        assertEquals(11, first.x);
+        assertEquals(2, first.y);
+        assertEquals(13, translated.get(1).x);
+
+        processor.close();
+    }
 }
@@ -23,3 +23,8 @@ export function generateStrings(count: number): string[] {
     }
     return result;
 }
+
+export function translate(points: { x: number; y: number }[], dx: number): { x: number; y: number }[] {
+    log("Translating " + points.length + " points by " + dx);
+    return points.map(point => ({ x: point.x + dx, y: point.y }));
+}
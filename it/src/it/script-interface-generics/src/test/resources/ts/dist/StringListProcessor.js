@@ -19,3 +19,7 @@ export function generateStrings(count) {
     }
     return result;
 }
+export function translate(points, dx) {
+    log("Translating " + points.length + " points by " + dx);
+    return points.map(point => ({ x: point.x + dx, y: point.y }));
+}
@@ -23,9 +23,14 @@ function generateStrings(count) {
   }
   return result;
 }
+function translate(points, dx) {
+  log("Translating " + points.length + " points by " + dx);
+  return points.map((point) => ({ x: point.x + dx, y: point.y }));
+}
 export {
   filterContaining,
   generateStrings,
   joinStrings,
-  toUpperCase
+  toUpperCase,
+  translate
 };
@@ -14,6 +14,11 @@ class ScriptInterfaceTest {
         void log(String message);
     }
 
+    @ScriptInterface(library = "precompiled/operation.js")
+    public interface PrecompiledFunction {
+        int operation(int term1, int term2);
+    }
+
     String jsLibrary(String operation) {
         return "function operation(term1, term2) { return (term1 "
                 + operation
@@ -49,4 +54,15 @@ class ScriptInterfaceTest {
 
         userFunctionProxy.close();
     }
+
+    @Test
+    public void precompiledScriptInterface() throws Exception {
+        try (var proxy = new PrecompiledFunction_Proxy()) {
+            assertEquals(1, proxy.operation(3, 2));
+        }
+        // the library can still be provided at runtime
+        try (var proxy = new PrecompiledFunction_Proxy(jsLibrary("*"))) {
+            assertEquals(6, proxy.operation(3, 2));
+        }
+    }
 }
@@ -0,0 +1,2 @@
+function operation(term1, term2) { return term1 - term2; }
+function log(msg) { console.log(msg); }
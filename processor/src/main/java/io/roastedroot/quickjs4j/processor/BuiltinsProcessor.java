@@ -184,7 +184,7 @@ public final class BuiltinsProcessor extends Quickjs4jAbstractProcessor {
                     var javaRefType = "io.roastedroot.quickjs4j.core.HostRef";
                     returnType = new FieldAccessExpr(new NameExpr(javaRefType), "class");
                 } else {
-                    returnType = new FieldAccessExpr(new NameExpr(returnName), "class");
+                    returnType = typeExpr(returnName);
                 }
                 break;
         }
@@ -253,7 +253,7 @@ public final class BuiltinsProcessor extends Quickjs4jAbstractProcessor {
                     } else {
                         var type = parseType(typeLiteral);
                         arguments.add(new CastExpr(type, argExpr(argIndex)));
-                        paramTypes.add(new FieldAccessExpr(new NameExpr(typeLiteral), "class"));
+                        paramTypes.add(typeExpr(typeLiteral));
                     }
             }
         }
@@ -10,26 +10,44 @@ import com.github.javaparser.ast.ArrayCreationLevel;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.ArrayCreationExpr;
 import com.github.javaparser.ast.expr.ArrayInitializerExpr;
 import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.BinaryExpr;
 import com.github.javaparser.ast.expr.CastExpr;
+import com.github.javaparser.ast.expr.ClassExpr;
+import com.github.javaparser.ast.expr.ConditionalExpr;
+import com.github.javaparser.ast.expr.EnclosedExpr;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.LambdaExpr;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NullLiteralExpr;
 import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.SimpleName;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
 import com.github.javaparser.ast.expr.ThisExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
 import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
 import com.github.javaparser.ast.stmt.ReturnStmt;
+import com.github.javaparser.ast.type.UnknownType;
 import io.roastedroot.quickjs4j.annotations.GuestFunction;
 import io.roastedroot.quickjs4j.annotations.HostRefParam;
 import io.roastedroot.quickjs4j.annotations.Invokables;
 import io.roastedroot.quickjs4j.annotations.ReturnsHostRef;
+import io.roastedroot.quickjs4j.core.Engine;
+import io.roastedroot.quickjs4j.core.PrecompiledLibraries;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -39,8 +57,10 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.tools.StandardLocation;
 
 public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
+    private static final String COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
@@ -60,6 +80,8 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
         if (moduleName.isEmpty()) {
             moduleName = type.getSimpleName().toString();
         }
+        var library = type.getAnnotation(Invokables.class).library();
+        var precompiled = !library.isEmpty();
 
         var pkg = getPackageName(type);
         var packageName = pkg.getQualifiedName().toString();
@@ -74,6 +96,9 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
         cu.addImport("io.roastedroot.quickjs4j.core.GuestFunction");
         // TODO: verify HostRefs in GuestFunctions
         cu.addImport("io.roastedroot.quickjs4j.core.HostRef");
+        if (precompiled) {
+            cu.addImport("io.roastedroot.quickjs4j.core.PrecompiledLibraries");
+        }
         cu.addImport(List.class);
 
         var typeName = type.getSimpleName().toString();
@@ -87,28 +112,41 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                         .addSingleMemberAnnotation(Generated.class, processorName);
 
         classDef.addField(String.class, "jsLibrary", Modifier.Keyword.FINAL);
+        if (precompiled) {
+            classDef.addField("byte[]", "jsBytecode", Modifier.Keyword.FINAL);
+        }
         classDef.addField("io.roastedroot.quickjs4j.core.Runner", "runner", Modifier.Keyword.FINAL);
 
         var constructor =
-                classDef.addConstructor()
-                        .addParameter(String.class, "jsLibrary")
-                        .addParameter("io.roastedroot.quickjs4j.core.Runner", "runner")
-                        .setPrivate(true);
-
-        constructor
-                .createBody()
-                .addStatement(
-                        new AssignExpr(
-                                new FieldAccessExpr(new ThisExpr(), "jsLibrary"),
-                                new NameExpr("jsLibrary"),
-                                AssignExpr.Operator.ASSIGN))
-                .addStatement(
-                        new AssignExpr(
-                                new FieldAccessExpr(new ThisExpr(), "runner"),
-                                new NameExpr("runner"),
-                                AssignExpr.Operator.ASSIGN));
+                classDef.addConstructor().addParameter(String.class, "jsLibrary").setPrivate(true);
+        if (precompiled) {
+            constructor.addParameter("byte[]", "jsBytecode");
+        }
+        constructor.addParameter("io.roastedroot.quickjs4j.core.Runner", "runner");
+
+        var constructorBody =
+                constructor
+                        .createBody()
+                        .addStatement(
+                                new AssignExpr(
+                                        new FieldAccessExpr(new ThisExpr(), "jsLibrary"),
+                                        new NameExpr("jsLibrary"),
+                                        AssignExpr.Operator.ASSIGN));
+        if (precompiled) {
+            constructorBody.addStatement(
+                    new AssignExpr(
+                            new FieldAccessExpr(new ThisExpr(), "jsBytecode"),
+                            new NameExpr("jsBytecode"),
+                            AssignExpr.Operator.ASSIGN));
+        }
+        constructorBody.addStatement(
+                new AssignExpr(
+                        new FieldAccessExpr(new ThisExpr(), "runner"),
+                        new NameExpr("runner"),
+                        AssignExpr.Operator.ASSIGN));
 
         List<Expression> functions = new ArrayList<>();
+        List<String> functionNames = new ArrayList<>();
         for (Element member : elements().getAllMembers(type)) {
             if (member instanceof ExecutableElement && annotatedWith(member, GuestFunction.class)) {
                 var name = member.getAnnotation(GuestFunction.class).value();
@@ -123,29 +161,61 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                                         member.getSimpleName().toString(), Modifier.Keyword.PUBLIC)
                                 .addAnnotation(Override.class);
 
-                NodeList<Expression> arguments = NodeList.nodeList();
                 for (int i = 0; i < executable.getParameters().size(); i++) {
                     overriddenMethod.addParameter(
                             executable.getParameters().get(i).asType().toString(), "arg" + i);
-                    arguments.add(new NameExpr("arg" + i));
                 }
-                var argsList =
-                        new MethodCallExpr(new NameExpr("List"), new SimpleName("of"), arguments);
+                var argsList = argsWriter(executable);
 
                 var methodBody = overriddenMethod.createBody();
+                var asyncResultType = asyncResultType(executable);
+                var suffix = (asyncResultType == null) ? "" : "Async";
 
-                var invocationHandle =
+                Expression invocationHandle =
                         new MethodCallExpr(
                                 new NameExpr("runner"),
-                                new SimpleName("invokeGuestFunction"),
+                                new SimpleName("invokeGuestFunction" + suffix),
                                 NodeList.nodeList(
                                         new StringLiteralExpr(moduleName),
                                         new StringLiteralExpr(name),
                                         argsList,
                                         new NameExpr("jsLibrary")));
+                if (precompiled) {
+                    var precompiledInvocationHandle =
+                            new MethodCallExpr(
+                                    new NameExpr("runner"),
+                                    new SimpleName("invokePrecompiledGuestFunction" + suffix),
+                                    NodeList.nodeList(
+                                            new StringLiteralExpr(moduleName),
+                                            new StringLiteralExpr(name),
+                                            argsList.clone(),
+                                            new NameExpr("jsBytecode")));
+                    invocationHandle =
+                            new EnclosedExpr(
+                                    new ConditionalExpr(
+                                            new BinaryExpr(
+                                                    new NameExpr("jsBytecode"),
+                                                    new NullLiteralExpr(),
+                                                    BinaryExpr.Operator.EQUALS),
+                                            invocationHandle,
+                                            precompiledInvocationHandle));
+                }
 
                 var hasReturn = extractHasReturn(executable);
-                if (hasReturn) {
+                if (asyncResultType != null) {
+                    overriddenMethod.setType(parseType(executable.getReturnType().toString()));
+                    var result =
+                            new LambdaExpr(
+                                    new Parameter(new UnknownType(), "result"),
+                                    new CastExpr(
+                                            parseType(asyncResultType), new NameExpr("result")));
+                    methodBody.addStatement(
+                            new ReturnStmt(
+                                    new MethodCallExpr(
+                                            invocationHandle,
+                                            new SimpleName("thenApply"),
+                                            NodeList.nodeList(result))));
+                } else if (hasReturn) {
                     var returnType = parseType(executable.getReturnType().toString());
                     overriddenMethod.setType(returnType);
                     methodBody.addStatement(
@@ -155,9 +225,14 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                 }
 
                 functions.add(processGuestFunction((ExecutableElement) member));
+                functionNames.add(name);
             }
         }
 
+        if (precompiled && !precompileLibrary(type, moduleName, library, functionNames)) {
+            return;
+        }
+
         var newJsFunctions =
                 new ArrayCreationExpr(
                         parseType("GuestFunction"),
@@ -182,6 +257,11 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                 .setType("Invokables")
                 .setBody(new BlockStmt(new NodeList<>(new ReturnStmt(invokablesCreationHandle))));
 
+        NodeList<Expression> createArguments = NodeList.nodeList(new NameExpr("jsLibrary"));
+        if (precompiled) {
+            createArguments.add(new NullLiteralExpr());
+        }
+        createArguments.add(new NameExpr("runner"));
         classDef.addMethod("create")
                 .setPublic(true)
                 .setStatic(true)
@@ -195,9 +275,56 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                                                 new ObjectCreationExpr(
                                                         null,
                                                         parseClassOrInterfaceType(className),
-                                                        NodeList.nodeList(
-                                                                new NameExpr("jsLibrary"),
-                                                                new NameExpr("runner")))))));
+                                                        createArguments)))));
+
+        if (precompiled) {
+            // uses the bytecode emitted at build time, the library is compiled at runtime when
+            // the bytecode has been produced by a different quickjs4j or plugin build
+            var loadBytecode =
+                    new MethodCallExpr(
+                            new NameExpr("PrecompiledLibraries"),
+                            "load",
+                            NodeList.nodeList(
+                                    new ClassExpr(parseClassOrInterfaceType(className)),
+                                    new StringLiteralExpr(moduleName)));
+            var loadSource =
+                    new MethodCallExpr(
+                            new NameExpr("PrecompiledLibraries"),
+                            "loadSource",
+                            NodeList.nodeList(
+                                    new ClassExpr(parseClassOrInterfaceType(className)),
+                                    new StringLiteralExpr(library)));
+            var jsLibrary =
+                    new ConditionalExpr(
+                            new BinaryExpr(
+                                    new NameExpr("jsBytecode"),
+                                    new NullLiteralExpr(),
+                                    BinaryExpr.Operator.EQUALS),
+                            loadSource,
+                            new NullLiteralExpr());
+            classDef.addMethod("create")
+                    .setPublic(true)
+                    .setStatic(true)
+                    .addParameter("io.roastedroot.quickjs4j.core.Runner", "runner")
+                    .setType(typeName)
+                    .setBody(
+                            new BlockStmt(
+                                    new NodeList<>(
+                                            new ExpressionStmt(
+                                                    new VariableDeclarationExpr(
+                                                            new VariableDeclarator(
+                                                                    parseType("byte[]"),
+                                                                    "jsBytecode",
+                                                                    loadBytecode))),
+                                            new ReturnStmt(
+                                                    new ObjectCreationExpr(
+                                                            null,
+                                                            parseClassOrInterfaceType(className),
+                                                            NodeList.nodeList(
+                                                                    jsLibrary,
+                                                                    new NameExpr("jsBytecode"),
+                                                                    new NameExpr("runner")))))));
+        }
 
         String prefix = (pkg.isUnnamed()) ? "" : packageName + ".";
         String qualifiedName = prefix + type.getSimpleName() + "_Invokables";
@@ -208,12 +335,134 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
         }
     }
 
+    // compiles the library with the same suffix and dispatcher used at runtime
+    private boolean precompileLibrary(
+            TypeElement type, String moduleName, String library, List<String> functionNames) {
+        String libraryCode;
+        try {
+            libraryCode = readLibrary(library);
+        } catch (IOException e) {
+            log(ERROR, format("Failed to read the library %s: %s", library, e), type);
+            return false;
+        }
+
+        var invokables = io.roastedroot.quickjs4j.core.Invokables.builder(moduleName);
+        for (var functionName : functionNames) {
+            invokables.add(
+                    new io.roastedroot.quickjs4j.core.GuestFunction(
+                            functionName, List.of(), Object.class));
+        }
+
+        byte[] bytecode;
+        try (var engine = Engine.builder().addInvokables(invokables.build()).build()) {
+            bytecode = engine.compilePortableGuestFunction(libraryCode);
+        } catch (RuntimeException e) {
+            log(ERROR, format("Failed to precompile the library %s: %s", library, e), type);
+            return false;
+        }
+
+        var resourceName = PrecompiledLibraries.resourceName(moduleName);
+        try (OutputStream out =
+                filer().createResource(StandardLocation.CLASS_OUTPUT, "", resourceName, type)
+                        .openOutputStream()) {
+            out.write(PrecompiledLibraries.encode(bytecode));
+        } catch (IOException e) {
+            log(ERROR, format("Failed to create %s file: %s", resourceName, e), type);
+            return false;
+        }
+        return true;
+    }
+
+    // Maven copies the resources to the class output before compiling, other build tools keep
+    // them apart: the quickjs4j.resources directories, the source path and the class path are
+    // looked up as well
+    private String readLibrary(String library) throws IOException {
+        var roots = processingEnv.getOptions().get(RESOURCES_OPTION);
+        if (roots != null) {
+            for (var root : roots.split(File.pathSeparator)) {
+                var path = Path.of(root).resolve(library);
+                if (Files.isRegularFile(path)) {
+                    return Files.readString(path);
+                }
+            }
+        }
+        for (var location :
+                List.of(
+                        StandardLocation.CLASS_OUTPUT,
+                        StandardLocation.SOURCE_PATH,
+                        StandardLocation.CLASS_PATH)) {
+            try {
+                return filer().getResource(location, "", library).getCharContent(true).toString();
+            } catch (IOException | IllegalArgumentException e) {
+                // not available in this location
+            }
+        }
+        throw new FileNotFoundException(
+                "not found in the class output, the source path, the class path or the "
+                        + RESOURCES_OPTION
+                        + " directories");
+    }
+
+    // streams the arguments without boxing them in a List, HostRefs are registered by the
+    // Engine and need the List
+    private Expression argsWriter(ExecutableElement executable) {
+        NodeList<Expression> arguments = NodeList.nodeList();
+        var body = new BlockStmt();
+        var hostRefs = false;
+        for (int i = 0; i < executable.getParameters().size(); i++) {
+            var parameter = executable.getParameters().get(i);
+            var arg = new NameExpr("arg" + i);
+            arguments.add(arg);
+            hostRefs |= annotatedWith(parameter, HostRefParam.class);
+            String method;
+            switch (parameter.asType().toString()) {
+                case "int":
+                case "long":
+                case "double":
+                case "float":
+                    method = "writeNumber";
+                    break;
+                case "boolean":
+                    method = "writeBoolean";
+                    break;
+                case "java.lang.String":
+                    method = "writeString";
+                    break;
+                default:
+                    method = "writeObject";
+                    break;
+            }
+            body.addStatement(
+                    new MethodCallExpr(
+                            new NameExpr("generator"), method, NodeList.nodeList(arg.clone())));
+        }
+        if (hostRefs) {
+            return new MethodCallExpr(new NameExpr("List"), new SimpleName("of"), arguments);
+        }
+        return new LambdaExpr(new Parameter(new UnknownType(), "generator"), body);
+    }
+
     private Expression addPrimitiveReturn(String typeLiteral) {
         return new FieldAccessExpr(new NameExpr(typeLiteral), "class");
     }
 
+    // the type of the result of guest functions returning a CompletableFuture, null otherwise
+    private String asyncResultType(ExecutableElement executable) {
+        var returnName = executable.getReturnType().toString();
+        if (returnName.startsWith(COMPLETABLE_FUTURE + "<") && returnName.endsWith(">")) {
+            return returnName.substring(COMPLETABLE_FUTURE.length() + 1, returnName.length() - 1);
+        } else if (returnName.equals(COMPLETABLE_FUTURE)) {
+            return "java.lang.Object";
+        }
+        return null;
+    }
+
     private Expression extractReturn(ExecutableElement executable) {
         String returnName = executable.getReturnType().toString();
+        var asyncResultType = asyncResultType(executable);
+        if (asyncResultType != null) {
+            returnName = asyncResultType;
+        }
         Expression returnType;
         switch (returnName) {
             case "void":
@@ -235,12 +484,11 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                 returnType = addPrimitiveReturn("java.lang.Boolean");
                 break;
             default:
-                var typeLiteral = removeGenerics(returnName);
                 if (annotatedWith(executable, ReturnsHostRef.class)) {
                     var javaRefType = "io.roastedroot.quickjs4j.core.HostRef";
                     returnType = new FieldAccessExpr(new NameExpr(javaRefType), "class");
                 } else {
-                    returnType = new FieldAccessExpr(new NameExpr(typeLiteral), "class");
+                    returnType = typeExpr(returnName);
                 }
                 break;
         }
@@ -268,27 +516,17 @@ public final class InvokablesProcessor extends Quickjs4jAbstractProcessor {
                     paramTypes.add(new FieldAccessExpr(new NameExpr("java.lang.Boolean"), "class"));
                     break;
                 default:
-                    var typeLiteral = removeGenerics(parameter.asType().toString());
                     if (annotatedWith(parameter, HostRefParam.class)) {
                         var javaRefType = "io.roastedroot.quickjs4j.core.HostRef";
                         paramTypes.add(new FieldAccessExpr(new NameExpr(javaRefType), "class"));
                     } else {
-                        paramTypes.add(new FieldAccessExpr(new NameExpr(typeLiteral), "class"));
+                        paramTypes.add(typeExpr(parameter.asType().toString()));
                     }
             }
         }
         return paramTypes;
     }
 
-    private String removeGenerics(String typeLiteral) {
-        var genericIndex = typeLiteral.indexOf('<');
-        if (genericIndex > 0) {
-            return typeLiteral.substring(0, genericIndex);
-        } else {
-            return typeLiteral;
-        }
-    }
-
     private Expression processGuestFunction(ExecutableElement executable) {
         // compute function name
         var name = executable.getAnnotation(GuestFunction.class).value();
@@ -1,7 +1,14 @@
 package io.roastedroot.quickjs4j.processor;
 
+import static com.github.javaparser.StaticJavaParser.parseClassOrInterfaceType;
 import static com.github.javaparser.printer.configuration.DefaultPrinterConfiguration.ConfigOption.COLUMN_ALIGN_PARAMETERS;
 
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.printer.DefaultPrettyPrinter;
 import com.github.javaparser.printer.configuration.DefaultConfigurationOption;
 import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration;
@@ -32,6 +39,15 @@ public abstract class Quickjs4jAbstractProcessor extends AbstractProcessor {
                 ScriptInterface.class.getName());
     }
 
+    // resource directories, for build tools that don't copy the resources to the class output
+    // before compiling, e.g. with Gradle: -Aquickjs4j.resources=src/main/resources
+    static final String RESOURCES_OPTION = "quickjs4j.resources";
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Set.of(RESOURCES_OPTION);
+    }
+
     static final class AbortProcessingException extends RuntimeException {}
 
     @Override
@@ -78,4 +94,22 @@ public abstract class Quickjs4jAbstractProcessor extends AbstractProcessor {
                 .map(TypeMirror::toString)
                 .anyMatch(annotationName::equals);
     }
+
+    // a class literal, or a Type keeping the type arguments (e.g. List<Point>) captured
+    // by an anonymous TypeReference, so that values are decoded straight into it
+    static Expression typeExpr(String typeName) {
+        if (typeName.indexOf('<') < 0) {
+            return new FieldAccessExpr(new NameExpr(typeName), "class");
+        }
+        var typeReference =
+                new ObjectCreationExpr(
+                                null,
+                                parseClassOrInterfaceType(
+                                        "com.fasterxml.jackson.core.type.TypeReference<"
+                                                + typeName
+                                                + ">"),
+                                NodeList.nodeList())
+                        .setAnonymousClassBody(new NodeList<>());
+        return new MethodCallExpr(typeReference, "getType");
+    }
 }
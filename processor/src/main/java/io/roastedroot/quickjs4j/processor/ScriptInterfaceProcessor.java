@@ -9,11 +9,15 @@ import static javax.tools.Diagnostic.Kind.NOTE;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Modifier;
 import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.expr.AssignExpr;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MemberValuePair;
 import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.Name;
 import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
 import com.github.javaparser.ast.expr.ObjectCreationExpr;
 import com.github.javaparser.ast.expr.StringLiteralExpr;
 import com.github.javaparser.ast.expr.ThisExpr;
@@ -77,10 +81,19 @@ public class ScriptInterfaceProcessor extends Quickjs4jAbstractProcessor {
         cu.addImport("io.roastedroot.quickjs4j.annotations.Invokables");
         cu.addImport("io.roastedroot.quickjs4j.annotations.GuestFunction");
 
-        var clazz =
-                cu.addInterface(name + "_Invokables")
-                        .addAnnotation("Invokables")
-                        .addSingleMemberAnnotation(Generated.class, processorName);
+        var library = type.getAnnotation(ScriptInterface.class).library();
+        var clazz = cu.addInterface(name + "_Invokables");
+        if (library.isEmpty()) {
+            clazz.addAnnotation("Invokables");
+        } else {
+            clazz.addAnnotation(
+                    new NormalAnnotationExpr(
+                            new Name("Invokables"),
+                            NodeList.nodeList(
+                                    new MemberValuePair(
+                                            "library", new StringLiteralExpr(library)))));
+        }
+        clazz.addSingleMemberAnnotation(Generated.class, processorName);
 
         for (Element member : elements().getAllMembers(type)) {
             if (member.getKind() == ElementKind.METHOD
@@ -225,8 +238,70 @@ public class ScriptInterfaceProcessor extends Quickjs4jAbstractProcessor {
         clazz.addField(
                 name + "_Invokables", "delegate", Modifier.Keyword.PRIVATE, Modifier.Keyword.FINAL);
 
+        var library = type.getAnnotation(ScriptInterface.class).library();
+        addProxyConstructor(clazz, name, builtinsContext, false);
+        if (!library.isEmpty()) {
+            // loads the library precompiled at build time
+            addProxyConstructor(clazz, name, builtinsContext, true);
+        }
+
+        clazz.addMethod("close", Modifier.Keyword.PUBLIC)
+                .addAnnotation(Override.class)
+                .setBody(
+                        new BlockStmt()
+                                .addStatement(new MethodCallExpr(new NameExpr("runner"), "close")));
+
+        for (Element member : elements().getAllMembers(type)) {
+            if (member.getKind() == ElementKind.METHOD
+                    && member instanceof ExecutableElement
+                    && !excludedMembers.contains(member.getSimpleName().toString())) {
+                var method =
+                        clazz.addMethod(member.getSimpleName().toString(), Modifier.Keyword.PUBLIC)
+                                .addAnnotation(Override.class);
+                var invokeHandle =
+                        new MethodCallExpr(
+                                new NameExpr("delegate"), member.getSimpleName().toString());
+                for (VariableElement parameter : ((ExecutableElement) member).getParameters()) {
+                    invokeHandle.addArgument(parameter.getSimpleName().toString());
+                    method.addParameter(
+                            parseType(parameter.asType().toString()),
+                            parameter.getSimpleName().toString());
+                }
+                method.setType(parseType(((ExecutableElement) member).getReturnType().toString()));
+
+                List<? extends TypeMirror> thrownTypes =
+                        ((ExecutableElement) member).getThrownTypes();
+                for (TypeMirror thrownType : thrownTypes) {
+                    method.addThrownException(
+                            parseType(thrownType.toString()).asClassOrInterfaceType());
+                }
+
+                if (extractHasReturn((ExecutableElement) member)) {
+                    method.setBody(new BlockStmt().addStatement(new ReturnStmt(invokeHandle)));
+                } else {
+                    method.setBody(new BlockStmt().addStatement(invokeHandle));
+                }
+            }
+        }
+
+        String prefix = (pkg.isUnnamed()) ? "" : packageName + ".";
+        String qualifiedName = prefix + type.getSimpleName() + "_Proxy";
+        try (Writer writer = filer().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(cu.printer(printer()).toString());
+        } catch (IOException e) {
+            log(ERROR, format("Failed to create %s file: %s", qualifiedName, e), null);
+        }
+    }
+
+    private void addProxyConstructor(
+            ClassOrInterfaceDeclaration clazz,
+            String name,
+            Element builtinsContext,
+            boolean precompiled) {
         var constructor = clazz.addConstructor(Modifier.Keyword.PUBLIC);
-        constructor.addParameter("String", "script");
+        if (!precompiled) {
+            constructor.addParameter("String", "script");
+        }
 
         Expression engineBuilder = new MethodCallExpr(new NameExpr("Engine"), "builder");
         if (hasBuiltinsContext(builtinsContext)) {
@@ -261,6 +336,12 @@ public class ScriptInterfaceProcessor extends Quickjs4jAbstractProcessor {
                                                 "toInvokables"))),
                         "build");
 
+        NodeList<Expression> createArguments = new NodeList<>();
+        if (!precompiled) {
+            createArguments.add(new NameExpr("script"));
+        }
+        createArguments.add(new FieldAccessExpr(new ThisExpr(), "runner"));
+
         var constructorBody = new BlockStmt();
         constructorBody.addStatement(
                 new AssignExpr(
@@ -283,58 +364,9 @@ public class ScriptInterfaceProcessor extends Quickjs4jAbstractProcessor {
                         new MethodCallExpr(
                                 new NameExpr(name + "_Invokables_Invokables"),
                                 "create",
-                                NodeList.nodeList(
-                                        new NameExpr("script"),
-                                        new FieldAccessExpr(new ThisExpr(), "runner"))),
+                                createArguments),
                         AssignExpr.Operator.ASSIGN));
         constructor.setBody(constructorBody);
-
-        clazz.addMethod("close", Modifier.Keyword.PUBLIC)
-                .addAnnotation(Override.class)
-                .setBody(
-                        new BlockStmt()
-                                .addStatement(new MethodCallExpr(new NameExpr("runner"), "close")));
-
-        for (Element member : elements().getAllMembers(type)) {
-            if (member.getKind() == ElementKind.METHOD
-                    && member instanceof ExecutableElement
-                    && !excludedMembers.contains(member.getSimpleName().toString())) {
-                var method =
-                        clazz.addMethod(member.getSimpleName().toString(), Modifier.Keyword.PUBLIC)
-                                .addAnnotation(Override.class);
-                var invokeHandle =
-                        new MethodCallExpr(
-                                new NameExpr("delegate"), member.getSimpleName().toString());
-                for (VariableElement parameter : ((ExecutableElement) member).getParameters()) {
-                    invokeHandle.addArgument(parameter.getSimpleName().toString());
-                    method.addParameter(
-                            parseType(parameter.asType().toString()),
-                            parameter.getSimpleName().toString());
-                }
-                method.setType(parseType(((ExecutableElement) member).getReturnType().toString()));
-
-                List<? extends TypeMirror> thrownTypes =
-                        ((ExecutableElement) member).getThrownTypes();
-                for (TypeMirror thrownType : thrownTypes) {
-                    method.addThrownException(
-                            parseType(thrownType.toString()).asClassOrInterfaceType());
-                }
-
-                if (extractHasReturn((ExecutableElement) member)) {
-                    method.setBody(new BlockStmt().addStatement(new ReturnStmt(invokeHandle)));
-                } else {
-                    method.setBody(new BlockStmt().addStatement(invokeHandle));
-                }
-            }
-        }
-
-        String prefix = (pkg.isUnnamed()) ? "" : packageName + ".";
-        String qualifiedName = prefix + type.getSimpleName() + "_Proxy";
-        try (Writer writer = filer().createSourceFile(qualifiedName, type).openWriter()) {
-            writer.write(cu.printer(printer()).toString());
-        } catch (IOException e) {
-            log(ERROR, format("Failed to create %s file: %s", qualifiedName, e), null);
-        }
     }
 
     private static boolean hasBuiltinsContext(Element elem) {
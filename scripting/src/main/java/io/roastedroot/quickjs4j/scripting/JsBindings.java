@@ -0,0 +1,55 @@
+package io.roastedroot.quickjs4j.scripting;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.script.SimpleBindings;
+
+// Bindings that track a version per entry, so that JsScriptEngine only transfers the entries
+// changed since the previous evaluation.
+// A value mutated in place is not detected, put it again to transfer it.
+public class JsBindings extends SimpleBindings {
+    private final Map<String, Long> versions = new HashMap<>();
+    private final Set<String> lazy = new HashSet<>();
+    private long version;
+
+    @Override
+    public Object put(String name, Object value) {
+        var previous = super.put(name, value);
+        lazy.remove(name);
+        versions.put(name, ++version);
+        return previous;
+    }
+
+    // the value is serialized only if, and when, a script reads it
+    public Object putLazy(String name, Object value) {
+        var previous = super.put(name, value);
+        lazy.add(name);
+        versions.put(name, ++version);
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        var previous = super.remove(key);
+        lazy.remove(key);
+        versions.remove(key);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        lazy.clear();
+        versions.clear();
+    }
+
+    long version(String name) {
+        return versions.getOrDefault(name, 0L);
+    }
+
+    boolean isLazy(String name) {
+        return lazy.contains(name);
+    }
+}
@@ -9,15 +9,25 @@ public class JsCompiledScript extends CompiledScript {
 
     private final JsScriptEngine engine;
     private final String script;
+    // null when the script can't be precompiled
+    private final byte[] compiledScript;
 
-    JsCompiledScript(JsScriptEngine engine, String script) {
+    JsCompiledScript(JsScriptEngine engine, String script, byte[] compiledScript) {
         this.engine = engine;
         this.script = script;
+        this.compiledScript = compiledScript;
+    }
+
+    boolean precompiled() {
+        return compiledScript != null;
     }
 
     @Override
     public Object eval(ScriptContext context) throws ScriptException {
-        return engine.eval(script, context);
+        if (compiledScript == null) {
+            return engine.eval(script, context);
+        }
+        return engine.eval(compiledScript, context);
     }
 
     @Override
@@ -3,9 +3,11 @@ package io.roastedroot.quickjs4j.scripting;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.roastedroot.quickjs4j.core.BasicScriptCache;
+import io.roastedroot.quickjs4j.core.Builtins;
 import io.roastedroot.quickjs4j.core.Engine;
 import io.roastedroot.quickjs4j.core.GuestException;
 import io.roastedroot.quickjs4j.core.GuestFunction;
+import io.roastedroot.quickjs4j.core.HostFunction;
 import io.roastedroot.quickjs4j.core.Invokables;
 import io.roastedroot.quickjs4j.core.Runner;
 import io.roastedroot.quickjs4j.core.ScriptCache;
@@ -13,9 +15,13 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
 import javax.script.Compilable;
@@ -24,22 +30,126 @@ import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptException;
-import javax.script.SimpleBindings;
 
 public class JsScriptEngine extends AbstractScriptEngine
         implements Compilable, Invocable, AutoCloseable {
 
+    // bindings: { values: { key: value }, lazy: [key] }, only the entries changed since the
+    // previous evaluation, lazy entries are fetched from the host on first read.
+    // The globals a script reassigns are reported to the host after the evaluation, to be
+    // transferred again, as if all the bindings were transferred on every evaluation.
+    private static final String EVAL_LIBRARY =
+            "function quickjsTransferred() {\n"
+                + "  if (!Object.prototype.hasOwnProperty.call(globalThis, 'quickjs4jTransferred'))"
+                + " {\n"
+                + "    Object.defineProperty(globalThis, 'quickjs4jTransferred', { value: new Map()"
+                + " });\n"
+                + "  }\n"
+                + "  return globalThis.quickjs4jTransferred;\n"
+                + "}\n"
+                + "function quickjsAssign(key, value) {\n"
+                + "  const current = Object.getOwnPropertyDescriptor(globalThis, key);\n"
+                + "  if (current && current.get) {\n"
+                + "    delete globalThis[key];\n"
+                + "  }\n"
+                + "  globalThis[key] = value;\n"
+                + "}\n"
+                + "function quickjsTransfer(key, value) {\n"
+                + "  quickjsAssign(key, value);\n"
+                + "  quickjsTransferred().set(key, { value });\n"
+                + "}\n"
+                + "function quickjsGet(key) {\n"
+                + "  const found = quickjs4jBindings.get(key);\n"
+                + "  if (found === null) {\n"
+                + "    throw new ReferenceError(key + ' is not defined in the current bindings');\n"
+                + "  }\n"
+                + "  return found.value;\n"
+                + "}\n"
+                + "function quickjsSetBindings(bindings) {\n"
+                + "  for (const [key, value] of Object.entries(bindings.values)) {\n"
+                + "    quickjsTransfer(key, value);\n"
+                + "  }\n"
+                + "  for (const key of bindings.lazy) {\n"
+                + "    const current = Object.getOwnPropertyDescriptor(globalThis, key);\n"
+                + "    if (current && !current.configurable) {\n"
+                + "      quickjsTransfer(key, quickjsGet(key));\n"
+                + "      continue;\n"
+                + "    }\n"
+                + "    Object.defineProperty(globalThis, key, {\n"
+                + "      configurable: true,\n"
+                + "      enumerable: true,\n"
+                + "      get() {\n"
+                + "        const value = quickjsGet(key);\n"
+                + "        quickjsTransfer(key, value);\n"
+                + "        return value;\n"
+                + "      },\n"
+                + "      set(value) {\n"
+                + "        quickjsAssign(key, value);\n"
+                + "      },\n"
+                + "    });\n"
+                + "    quickjsTransferred().set(key, null);\n"
+                + "  }\n"
+                + "}\n"
+                + "function quickjsCheckBindings() {\n"
+                + "  const transferred = quickjsTransferred();\n"
+                + "  const reassigned = [];\n"
+                + "  for (const [key, transfer] of transferred) {\n"
+                + "    const current = Object.getOwnPropertyDescriptor(globalThis, key);\n"
+                + "    const unchanged =\n"
+                + "      transfer === null\n"
+                + "        ? current && current.get\n"
+                + "        : current && 'value' in current && Object.is(current.value,"
+                + " transfer.value);\n"
+                + "    if (!unchanged) {\n"
+                + "      reassigned.push(key);\n"
+                + "      transferred.delete(key);\n"
+                + "    }\n"
+                + "  }\n"
+                + "  if (reassigned.length > 0) {\n"
+                + "    quickjs4jBindings.reassigned(reassigned);\n"
+                + "  }\n"
+                + "}\n"
+                + "export function quickjsEval(bindings, script) {\n"
+                + "  quickjsSetBindings(bindings);\n"
+                + "  try {\n"
+                + "    return (0, eval)(script);\n"
+                + "  } finally {\n"
+                + "    quickjsCheckBindings();\n"
+                + "  }\n"
+                + "}\n";
+
     private static final String EVAL_WRAPPER =
-            "export function quickjsEval(bindings, script) {\n"
-                    + "  for (const [key, value] of Object.entries(bindings)) {\n"
-                    + "    globalThis[key] = value;\n"
-                    + "  }\n"
-                    + "  return (0, eval)(script);\n"
+            EVAL_LIBRARY
+                    + "export function quickjsEvalCompiled(bindings) {\n"
+                    + "  throw new Error('No compiled script');\n"
                     + "}";
 
+    // scripts that would have a different meaning as an expression, e.g. a block or a
+    // function declaration
+    private static final Pattern NOT_AN_EXPRESSION =
+            Pattern.compile("^\\s*(\\{|function\\b|async\\s+function\\b|class\\b)");
+
+    // comparisons, that are not assignments
+    private static final Pattern COMPARISONS = Pattern.compile("===|!==|==|!=|=>|(?<![<>])[<>]=");
+
+    // what would have a different meaning in the function of a strict mode module than in the
+    // sloppy global code of eval: assignments, e.g. to undeclared globals, the receiver, the
+    // arguments, direct eval, deletes, nested functions and the names of the module itself
+    private static final Pattern MODULE_SENSITIVE =
+            Pattern.compile(
+                    "=|\\b(this|arguments|eval|delete|function|import|super|target|quickjs\\w*)\\b");
+
+    private static final Pattern TRAILING_SEMICOLONS = Pattern.compile("[\\s;]+$");
+
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
     private final Runner runner;
+    // what has been transferred to the guest for each binding, the entries are transferred
+    // again when the Bindings or the version differ
+    private Map<String, Transferred> transferred = new HashMap<>();
+    // read by the bindings callbacks during an evaluation
+    private volatile ScriptContext evalContext;
+    private volatile Map<String, Transferred> evalPending;
     private int lastStdoutLength;
     private int lastStderrLength;
 
@@ -51,6 +161,29 @@ public class JsScriptEngine extends AbstractScriptEngine
         var engine =
                 Engine.builder()
                         .withCache(cache)
+                        .addBuiltins(
+                                Builtins.builder("quickjs4jBindings")
+                                        .add(
+                                                new HostFunction(
+                                                        "get",
+                                                        List.of(String.class),
+                                                        Object.class,
+                                                        (args) -> lookup((String) args.get(0))))
+                                        .add(
+                                                new HostFunction(
+                                                        "reassigned",
+                                                        List.of(List.class),
+                                                        Void.class,
+                                                        (args) -> {
+                                                            // transferred again on the next
+                                                            // evaluation
+                                                            evalPending
+                                                                    .keySet()
+                                                                    .removeAll(
+                                                                            (List<?>) args.get(0));
+                                                            return null;
+                                                        }))
+                                        .build())
                         .addInvokables(
                                 Invokables.builder("quickjs4jScripting")
                                         .add(
@@ -58,26 +191,66 @@ public class JsScriptEngine extends AbstractScriptEngine
                                                         "quickjsEval",
                                                         List.of(Object.class, String.class),
                                                         Object.class))
+                                        .add(
+                                                new GuestFunction(
+                                                        "quickjsEvalCompiled",
+                                                        List.of(Object.class),
+                                                        Object.class))
                                         .build())
                         .build();
         this.runner = Runner.builder().withEngine(engine).build();
+        context.setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
     }
 
     @Override
     public Object eval(String script, ScriptContext context) throws ScriptException {
+        var pending = new HashMap<String, Transferred>();
+        var bindings = getBindings(context, pending);
+        return eval(
+                context,
+                pending,
+                () ->
+                        runner.invokeGuestFunction(
+                                "quickjs4jScripting",
+                                "quickjsEval",
+                                List.of(bindings, script),
+                                EVAL_WRAPPER));
+    }
+
+    Object eval(byte[] compiledScript, ScriptContext context) throws ScriptException {
+        var pending = new HashMap<String, Transferred>();
+        var bindings = getBindings(context, pending);
+        return eval(
+                context,
+                pending,
+                () ->
+                        runner.invokePrecompiledGuestFunction(
+                                "quickjs4jScripting",
+                                "quickjsEvalCompiled",
+                                List.of(bindings),
+                                compiledScript));
+    }
+
+    private Object eval(
+            ScriptContext context, Map<String, Transferred> pending, Supplier<Object> invocation)
+            throws ScriptException {
+        evalContext = context;
+        evalPending = pending;
         try {
-            var result =
-                    runner.invokeGuestFunction(
-                            "quickjs4jScripting",
-                            "quickjsEval",
-                            List.of(getBindings(context), script),
-                            EVAL_WRAPPER);
+            var result = invocation.get();
+            transferred = pending;
             return result;
         } catch (GuestException e) {
+            // the bindings are set before the script runs
+            transferred = pending;
             throw new ScriptException(e.getMessage());
         } catch (RuntimeException e) {
+            // unknown guest state, transfer everything on the next evaluation
+            transferred = new HashMap<>();
             throw new ScriptException(e);
         } finally {
+            evalContext = null;
+            evalPending = null;
             handleOutput(context);
         }
     }
@@ -89,9 +262,36 @@ public class JsScriptEngine extends AbstractScriptEngine
 
     // Compilable
 
+    // An expression is compiled to bytecode once, as the body of a function returning it,
+    // the value of other scripts is only available through eval and they are parsed on each
+    // evaluation.
+    // The bytecode is a module, the expressions that would behave differently in its strict
+    // mode function are not compiled either.
     @Override
     public CompiledScript compile(String script) throws ScriptException {
-        return new JsCompiledScript(this, script);
+        if (NOT_AN_EXPRESSION.matcher(script).find() || isModuleSensitive(script)) {
+            return new JsCompiledScript(this, script, null);
+        }
+        byte[] compiledScript;
+        try {
+            compiledScript =
+                    runner.compilePortableGuestFunction(
+                            EVAL_LIBRARY
+                                    + "export function quickjsEvalCompiled(quickjsBindings) {\n"
+                                    + "  quickjsSetBindings(quickjsBindings);\n"
+                                    + "  try {\n"
+                                    + "    return (\n"
+                                    + TRAILING_SEMICOLONS.matcher(script).replaceFirst("")
+                                    + "\n    );\n"
+                                    + "  } finally {\n"
+                                    + "    quickjsCheckBindings();\n"
+                                    + "  }\n"
+                                    + "}");
+        } catch (RuntimeException e) {
+            // statements, or invalid, reported on evaluation
+            compiledScript = null;
+        }
+        return new JsCompiledScript(this, script, compiledScript);
     }
 
     @Override
@@ -99,6 +299,11 @@ public class JsScriptEngine extends AbstractScriptEngine
         return compile(readAll(reader));
     }
 
+    // conservative, a string literal containing one of the names is enough
+    private static boolean isModuleSensitive(String script) {
+        return MODULE_SENSITIVE.matcher(COMPARISONS.matcher(script).replaceAll(" ")).find();
+    }
+
     // Invocable
 
     @Override
@@ -185,7 +390,7 @@ public class JsScriptEngine extends AbstractScriptEngine
 
     @Override
     public Bindings createBindings() {
-        return new SimpleBindings();
+        return new JsBindings();
     }
 
     @Override
@@ -246,23 +451,75 @@ public class JsScriptEngine extends AbstractScriptEngine
         return sb.toString();
     }
 
-    private Map<String, Object> getBindings(ScriptContext context) {
+    // a lazy binding read by a script, null when the accessor is left from an evaluation with
+    // other bindings, and the key is missing from the current ones
+    private Map<String, Object> lookup(String key) {
+        var context = evalContext;
+        if (context.getAttributesScope(key) == -1) {
+            return null;
+        }
+        return Collections.singletonMap("value", context.getAttribute(key));
+    }
+
+    // the entries changed since the previous evaluation, what is transferred is recorded in
+    // pending
+    private Map<String, Object> getBindings(
+            ScriptContext context, Map<String, Transferred> pending) {
         Bindings engineBindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
         Bindings globalBindings = context.getBindings(ScriptContext.GLOBAL_SCOPE);
-        Map<String, Object> bindings = new HashMap<>();
+        Map<String, Object> values = new HashMap<>();
+        List<String> lazy = new ArrayList<>();
         if (globalBindings != null) {
             for (String key : globalBindings.keySet()) {
                 if (engineBindings == null || !engineBindings.containsKey(key)) {
-                    bindings.put(key, globalBindings.get(key));
+                    transfer(key, globalBindings, values, lazy, pending);
                 }
             }
         }
         if (engineBindings != null) {
             for (String key : engineBindings.keySet()) {
-                bindings.put(key, engineBindings.get(key));
+                transfer(key, engineBindings, values, lazy, pending);
             }
         }
-        return bindings;
+        return Map.of("values", values, "lazy", lazy);
+    }
+
+    private void transfer(
+            String key,
+            Bindings bindings,
+            Map<String, Object> values,
+            List<String> lazy,
+            Map<String, Transferred> pending) {
+        if (!(bindings instanceof JsBindings)) {
+            // not versioned, always transferred
+            values.put(key, bindings.get(key));
+            return;
+        }
+        var jsBindings = (JsBindings) bindings;
+        var current = new Transferred(jsBindings, jsBindings.version(key));
+        pending.put(key, current);
+        if (current.matches(transferred.get(key))) {
+            return;
+        }
+        if (jsBindings.isLazy(key)) {
+            lazy.add(key);
+        } else {
+            values.put(key, jsBindings.get(key));
+        }
+    }
+
+    private static final class Transferred {
+        private final JsBindings bindings;
+        private final long version;
+
+        Transferred(JsBindings bindings, long version) {
+            this.bindings = bindings;
+            this.version = version;
+        }
+
+        boolean matches(Transferred other) {
+            return other != null && other.bindings == bindings && other.version == version;
+        }
     }
 
     private String buildCallExpression(String callable, Object... args) throws ScriptException {
@@ -1,6 +1,6 @@
 package io.roastedroot.quickjs4j.scripting;
 
-import io.roastedroot.quickjs4j.core.BasicScriptCache;
+import io.roastedroot.quickjs4j.core.LruScriptCache;
 import io.roastedroot.quickjs4j.core.ScriptCache;
 import io.roastedroot.quickjs4j.core.Version;
 import java.util.HashMap;
@@ -90,7 +90,8 @@ public class JsScriptEngineFactory implements ScriptEngineFactory {
         return ret;
     }
 
-    private static final ScriptCache cache = new BasicScriptCache();
+    // shared by all the engines created by this factory
+    private static final ScriptCache cache = new LruScriptCache(1024, 64L * 1024 * 1024);
 
     @Override
     public ScriptEngine getScriptEngine() {
@@ -1,6 +1,7 @@
 package io.roastedroot.quickjs4j.scripting;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -8,6 +9,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.script.Compilable;
 import javax.script.Invocable;
 import javax.script.ScriptContext;
@@ -142,6 +145,77 @@ public class JsScriptEngineTest {
         }
     }
 
+    // -- Incremental and lazy bindings --
+
+    @Test
+    public void testOnlyChangedBindingsAreTransferred() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            assertInstanceOf(JsBindings.class, engine.getBindings(ScriptContext.ENGINE_SCOPE));
+            engine.put("x", 1);
+            assertEquals(1, engine.eval("x"));
+            // the reassigned bindings are transferred again, as with other Bindings
+            assertEquals(5, engine.eval("x = 5; x"));
+            assertEquals(1, engine.eval("x"));
+
+            engine.put("x", 2);
+            assertEquals(2, engine.eval("x"));
+
+            // unchanged bindings aren't, a value mutated in place is kept
+            engine.put("o", Map.of("a", 1));
+            assertEquals(2, engine.eval("o.a = 2; o.a"));
+            assertEquals(2, engine.eval("o.a"));
+            assertEquals(3, engine.eval("o = 3; o"));
+            assertEquals(1, engine.eval("o.a"));
+        }
+    }
+
+    public static class Config {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        public int getValue() {
+            reads.incrementAndGet();
+            return 42;
+        }
+    }
+
+    @Test
+    public void testLazyBindings() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            var config = new Config();
+            var bindings = (JsBindings) engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            bindings.putLazy("config", config);
+
+            assertEquals(1, engine.eval("1"));
+            assertEquals(0, config.reads.get());
+
+            assertEquals(42, engine.eval("config.value"));
+            assertEquals(42, engine.eval("config.value + 0"));
+            assertEquals(1, config.reads.get());
+
+            bindings.put("config", 7);
+            assertEquals(7, engine.eval("config"));
+        }
+    }
+
+    @Test
+    public void testLazyBindingsMissingFromTheContext() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            var config = new Config();
+            var bindings = (JsBindings) engine.getBindings(ScriptContext.ENGINE_SCOPE);
+            bindings.putLazy("config", config);
+            assertEquals(1, engine.eval("1"));
+
+            // the accessor defined by the previous evaluation doesn't read another context
+            var other = new SimpleScriptContext();
+            other.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+            var e = assertThrows(ScriptException.class, () -> engine.eval("config.value", other));
+            assertTrue(e.getMessage().contains("config is not defined"), e.getMessage());
+            assertEquals(0, config.reads.get());
+
+            assertEquals(42, engine.eval("config.value"));
+        }
+    }
+
     // -- Compilable --
 
     @Test
@@ -163,6 +237,58 @@ public class JsScriptEngineTest {
         }
     }
 
+    @Test
+    public void testCompileExpressionToBytecode() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            var compiled = (JsCompiledScript) engine.compile("x * 2;\n");
+            assertTrue(compiled.precompiled());
+            for (int i = 0; i < 10; i++) {
+                engine.put("x", i);
+                assertEquals(i * 2, compiled.eval());
+            }
+        }
+    }
+
+    @Test
+    public void testCompileStatements() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            var statements = (JsCompiledScript) engine.compile("var y = 3; y + 1");
+            assertFalse(statements.precompiled());
+            assertEquals(4, statements.eval());
+
+            var declaration =
+                    (JsCompiledScript) engine.compile("function twice(v) { return v * 2; }");
+            assertFalse(declaration.precompiled());
+            declaration.eval();
+            assertEquals(8, engine.eval("twice(4)"));
+        }
+    }
+
+    @Test
+    public void testCompiledExpressionsKeepTheirMeaning() throws Exception {
+        try (var engine = new JsScriptEngine()) {
+            engine.put("bindings", 5);
+            var shadowed = (JsCompiledScript) engine.compile("bindings + 1");
+            assertTrue(shadowed.precompiled());
+            assertEquals(6, shadowed.eval());
+            assertEquals(6, engine.eval("bindings + 1"));
+
+            // sloppy mode assignment to an undeclared global
+            var assignment = (JsCompiledScript) engine.compile("z = bindings * 2");
+            assertFalse(assignment.precompiled());
+            assertEquals(10, assignment.eval());
+            assertEquals(10, engine.eval("z"));
+
+            var receiver = (JsCompiledScript) engine.compile("this === globalThis");
+            assertFalse(receiver.precompiled());
+            assertEquals(true, receiver.eval());
+
+            var comparison = (JsCompiledScript) engine.compile("bindings >= 5 && bindings !== 6");
+            assertTrue(comparison.precompiled());
+            assertEquals(true, comparison.eval());
+        }
+    }
+
     // -- Invocable: invokeFunction --
 
     @Test